@@ -0,0 +1,84 @@
+package com.example.csv;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流式读取 {@link FileUploadRequest} 格式的 JSON 请求体：{"fileName": "...", "fileContent": "Base64内容"}。
+ * <p>
+ * fileName 必须出现在 fileContent 之前（按 FileUploadRequest 序列化时字段就是这个顺序），
+ * 这样在开始导入前就能校验文件名；其他字段会被忽略。
+ */
+@Component
+public class Base64UploadDecoder {
+
+    private static final String FILE_NAME_FIELD = "fileName";
+    private static final String FILE_CONTENT_FIELD = "fileContent";
+
+    private final ObjectMapper objectMapper;
+    private final ExecutorService decodeExecutor;
+
+    public Base64UploadDecoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.decodeExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "csv-base64-decode-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 读取到 fileContent 字段为止，返回其解码后的内容。
+     *
+     * @throws IllegalArgumentException 请求体不是对象、缺少字段或字段顺序不对
+     */
+    public Base64UploadStream open(InputStream body) throws IOException {
+        JsonParser parser = objectMapper.getFactory().createParser(body);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("请求体必须是JSON对象");
+            }
+            String fileName = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (FILE_NAME_FIELD.equals(field)) {
+                    fileName = value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+                } else if (FILE_CONTENT_FIELD.equals(field)) {
+                    if (value != JsonToken.VALUE_STRING) {
+                        throw new IllegalArgumentException("fileContent 必须是Base64字符串");
+                    }
+                    if (fileName == null) {
+                        throw new IllegalArgumentException("fileName 必须出现在 fileContent 之前");
+                    }
+                    return new Base64UploadStream(fileName, parser, decodeExecutor);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            throw new IllegalArgumentException("请求体缺少 fileContent 字段");
+        } catch (JsonProcessingException e) {
+            parser.close();
+            throw new IllegalArgumentException("请求体不是有效的JSON: " + e.getOriginalMessage());
+        } catch (IOException | RuntimeException e) {
+            parser.close();
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        decodeExecutor.shutdownNow();
+    }
+}
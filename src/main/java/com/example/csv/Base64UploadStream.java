@@ -0,0 +1,128 @@
+package com.example.csv;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 解码后的 {@link FileUploadRequest#getFileContent()} 文件内容。
+ * <p>
+ * Jackson 只能把 Base64 字符串解码后"推"给一个 OutputStream（{@link JsonParser#readBinaryValue}），
+ * 解码过程会直接读取请求体、不会拼出整个字符串。这里由后台线程解码写入管道，读取方从管道另一端读出，
+ * 内存中只有管道缓冲区和解析器的输入缓冲区。
+ * <p>
+ * 解码线程结束（JSON 剩余部分也已校验完）后才返回流结束；请求体格式错误时读取方会收到异常，
+ * 不会把截断的内容当作完整文件导入。
+ */
+public class Base64UploadStream extends InputStream {
+
+    private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+
+    private final String fileName;
+    private final PipedInputStream pipe;
+    private final Future<?> decoder;
+
+    Base64UploadStream(String fileName, JsonParser parser, ExecutorService executor) throws IOException {
+        this.fileName = fileName;
+        this.pipe = new PipedInputStream(PIPE_BUFFER_SIZE);
+        OutputStream output = new FlushingOutputStream(new PipedOutputStream(pipe));
+        this.decoder = executor.submit(() -> {
+            try (parser; output) {
+                parser.readBinaryValue(Base64Variants.MIME_NO_LINEFEEDS, output);
+                // 读完 fileContent 之后的字段，确认整个请求体是完整的 JSON
+                while (parser.nextToken() != null) {
+                    parser.skipChildren();
+                }
+            }
+            return null;
+        });
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = pipe.read();
+        if (b < 0) {
+            awaitDecoder();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = pipe.read(b, off, len);
+        if (read < 0) {
+            awaitDecoder();
+        }
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return pipe.available();
+    }
+
+    /**
+     * 提前关闭时解码线程写入管道会失败并随之退出。
+     */
+    @Override
+    public void close() throws IOException {
+        pipe.close();
+        decoder.cancel(true);
+    }
+
+    private void awaitDecoder() throws IOException {
+        try {
+            decoder.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Base64解码被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof JsonProcessingException jsonException) {
+                throw new IllegalArgumentException("请求体不是有效的JSON或Base64内容: " + jsonException.getOriginalMessage());
+            }
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * PipedInputStream 只在写入方 flush 或缓冲区满时唤醒读取方，否则读取方最多会空等一秒；
+     * Jackson 解码时不会调用 flush，所以每次写入后都 flush 一次。
+     */
+    private static final class FlushingOutputStream extends FilterOutputStream {
+
+        FlushingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.csv;
+
+import java.math.BigDecimal;
+
+/**
+ * 按分类汇总的支出（取绝对值）。
+ * 由 {@link CategoryRollup}、{@link MonthlyCategoryRollupRepository#sumByCategory} 和
+ * {@link CsvDataRepository#sumExpenseByCategory} 提供。
+ */
+public interface CategoryAmountSummary {
+    String getCategory();
+
+    BigDecimal getAmount();
+
+    Long getCount();
+}
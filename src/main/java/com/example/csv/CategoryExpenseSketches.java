@@ -0,0 +1,156 @@
+package com.example.csv;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * 按月份 × 分类预先计算的支出摘要：笔数、合计、金额分位数（{@link QuantileDigest}）和最常见的备注（{@link TopKCounter}）。
+ * <p>
+ * 随快照在导入后构建。查询日期范围时合并范围内整月的摘要，只有首尾不完整的月份才从快照中逐行补充，
+ * 不需要重新扫描整个范围的明细。口径与分类支出汇总一致：只统计金额为负且分类不为空的行，金额取正数。
+ */
+public final class CategoryExpenseSketches {
+
+    private static final double COMPRESSION = 100;
+    private static final int REMARK_CAPACITY = 32;
+
+    /**
+     * 一组支出的统计摘要，金额单位为分。
+     */
+    public static final class Sketch {
+        private long count;
+        private long sum;
+        private final QuantileDigest amounts = new QuantileDigest(COMPRESSION);
+        private final TopKCounter remarks = new TopKCounter(REMARK_CAPACITY);
+
+        void add(long cents, String remark) {
+            count++;
+            sum += cents;
+            amounts.add(cents);
+            if (remark != null && !remark.isBlank()) {
+                remarks.add(remark);
+            }
+        }
+
+        void merge(Sketch other) {
+            count += other.count;
+            sum += other.sum;
+            amounts.merge(other.amounts);
+            remarks.merge(other.remarks);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public double quantile(double q) {
+            return amounts.quantile(q);
+        }
+
+        public TopKCounter getRemarks() {
+            return remarks;
+        }
+    }
+
+    // 每个有支出的月份第一天的纪元日，升序
+    private final int[] monthStarts;
+    // [月份下标][分类编号]，没有数据时为 null
+    private final Sketch[][] sketches;
+    private final int categoryCount;
+
+    /**
+     * @param firstRow 第一个有效行，之前的行时间或金额无效，不计入
+     */
+    CategoryExpenseSketches(int firstRow, int size, int[] epochDays, long[] amounts, int[] categoryIds,
+                            String[] remarks, int categoryCount) {
+        this.categoryCount = categoryCount;
+        int[] starts = new int[16];
+        Sketch[][] monthSketches = new Sketch[16][];
+        int monthCount = 0;
+
+        int monthEnd = Integer.MIN_VALUE;
+        for (int row = firstRow; row < size; row++) {
+            int categoryId = categoryIds[row];
+            if (amounts[row] >= 0 || categoryId == LedgerSnapshot.NULL_ID) {
+                continue;
+            }
+            int day = epochDays[row];
+            // 行按时间排序，日期超过当前月份最后一天时开始新的月份
+            if (day > monthEnd || monthCount == 0) {
+                LocalDate monthStart = LocalDate.ofEpochDay(day).withDayOfMonth(1);
+                if (monthCount == starts.length) {
+                    starts = Arrays.copyOf(starts, monthCount * 2);
+                    monthSketches = Arrays.copyOf(monthSketches, monthCount * 2);
+                }
+                starts[monthCount] = (int) monthStart.toEpochDay();
+                monthSketches[monthCount] = new Sketch[categoryCount];
+                monthCount++;
+                monthEnd = (int) monthStart.plusMonths(1).toEpochDay() - 1;
+            }
+            Sketch[] month = monthSketches[monthCount - 1];
+            if (month[categoryId] == null) {
+                month[categoryId] = new Sketch();
+            }
+            month[categoryId].add(-amounts[row], remarks[row]);
+        }
+
+        // 构建完成后压缩，之后并发查询只读取这些摘要
+        for (int i = 0; i < monthCount; i++) {
+            for (Sketch sketch : monthSketches[i]) {
+                if (sketch != null) {
+                    sketch.amounts.compress();
+                }
+            }
+        }
+        this.monthStarts = Arrays.copyOf(starts, monthCount);
+        this.sketches = Arrays.copyOf(monthSketches, monthCount);
+    }
+
+    /**
+     * 合并纪元日 [startDay, endDay] 内的支出摘要，参数为 null 表示不限制。
+     *
+     * @return 下标为分类编号，该分类在范围内没有支出时为 null
+     */
+    public Sketch[] forRange(LedgerSnapshot snapshot, Integer startDay, Integer endDay) {
+        Sketch[] result = new Sketch[categoryCount];
+        for (int i = 0; i < monthStarts.length; i++) {
+            int monthStart = monthStarts[i];
+            int monthEnd = (int) LocalDate.ofEpochDay(monthStart).plusMonths(1).toEpochDay() - 1;
+            int from = startDay != null ? Math.max(monthStart, startDay) : monthStart;
+            int to = endDay != null ? Math.min(monthEnd, endDay) : monthEnd;
+            if (from > to) {
+                continue;
+            }
+            if (from == monthStart && to == monthEnd) {
+                for (int categoryId = 0; categoryId < categoryCount; categoryId++) {
+                    Sketch sketch = sketches[i][categoryId];
+                    if (sketch != null) {
+                        sketchOf(result, categoryId).merge(sketch);
+                    }
+                }
+            } else {
+                // 不完整的月份只可能是范围的首尾两个月，逐行补充
+                LedgerSnapshot.Range range = snapshot.range(from, to);
+                for (int row = range.from(); row < range.to(); row++) {
+                    int categoryId = snapshot.categoryId(row);
+                    long amount = snapshot.amount(row);
+                    if (amount < 0 && categoryId != LedgerSnapshot.NULL_ID) {
+                        sketchOf(result, categoryId).add(-amount, snapshot.remark(row));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Sketch sketchOf(Sketch[] sketches, int categoryId) {
+        if (sketches[categoryId] == null) {
+            sketches[categoryId] = new Sketch();
+        }
+        return sketches[categoryId];
+    }
+}
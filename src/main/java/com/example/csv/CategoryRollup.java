@@ -0,0 +1,38 @@
+package com.example.csv;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+
+/**
+ * 各分类的累计支出（取绝对值）和笔数，由导入流程与 csv_data 同步维护。
+ */
+@Entity
+@Table(name = "csv_category_rollup")
+public class CategoryRollup implements CategoryAmountSummary {
+    @Id
+    private String category;
+
+    @Column(precision = 19, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "expense_count")
+    private Long count;
+
+    public CategoryRollup() {
+    }
+
+    @Override
+    public String getCategory() {
+        return category;
+    }
+
+    @Override
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    @Override
+    public Long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.csv;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface CategoryRollupRepository extends JpaRepository<CategoryRollup, String> {
+    List<CategoryRollup> findAllByOrderByAmountDesc();
+}
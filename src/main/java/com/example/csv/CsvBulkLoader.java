@@ -0,0 +1,597 @@
+package com.example.csv;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 批量装载 csv_data，支持两种方式：
+ * <ul>
+ *     <li>全量替换：先用JDBC批处理写入临时表，写完后通过 RENAME TABLE 原子替换正式表，
+ *     读取 /csv/data 的请求不会看到空表或写了一半的表。各汇总表（每日收支、分类支出、月份×分类支出）
+ *     在切换前由临时表重新计算，并在同一条 RENAME 语句中一起替换。</li>
+ *     <li>增量追加：按行内容哈希跳过库中已有的行，只插入新行，并在同一个事务中累加汇总表。</li>
+ * </ul>
+ * 需要在连接串中开启 rewriteBatchedStatements=true，驱动才会把批处理合并为多值 INSERT。
+ */
+@Component
+public class CsvBulkLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(CsvBulkLoader.class);
+
+    static final String TABLE = "csv_data";
+    static final String DAILY_ROLLUP_TABLE = "csv_daily_rollup";
+    static final String CATEGORY_ROLLUP_TABLE = "csv_category_rollup";
+    static final String MONTHLY_CATEGORY_ROLLUP_TABLE = "csv_monthly_category_rollup";
+
+    private static final String[] TABLES = {
+            TABLE, DAILY_ROLLUP_TABLE, CATEGORY_ROLLUP_TABLE, MONTHLY_CATEGORY_ROLLUP_TABLE
+    };
+    private static final String[] ROLLUP_TABLES = {
+            DAILY_ROLLUP_TABLE, CATEGORY_ROLLUP_TABLE, MONTHLY_CATEGORY_ROLLUP_TABLE
+    };
+    private static final String STAGING_SUFFIX = "_staging";
+    private static final String OLD_SUFFIX = "_old";
+
+    private static final int BATCH_SIZE = 5000;
+    // 增量追加时每批检查重复的行数，也是 IN 查询的最大参数个数
+    private static final int APPEND_BATCH_SIZE = 1000;
+
+    private static final String DAILY_ROLLUP_UPSERT_SQL = "INSERT INTO " + DAILY_ROLLUP_TABLE +
+            " (stat_date, income, expense, record_count) VALUES (?, ?, ?, ?)" +
+            " ON DUPLICATE KEY UPDATE income = income + VALUES(income), expense = expense + VALUES(expense)," +
+            " record_count = record_count + VALUES(record_count)";
+    private static final String CATEGORY_ROLLUP_UPSERT_SQL = "INSERT INTO " + CATEGORY_ROLLUP_TABLE +
+            " (category, amount, expense_count) VALUES (?, ?, ?)" +
+            " ON DUPLICATE KEY UPDATE amount = amount + VALUES(amount)," +
+            " expense_count = expense_count + VALUES(expense_count)";
+    private static final String MONTHLY_CATEGORY_ROLLUP_UPSERT_SQL = "INSERT INTO " + MONTHLY_CATEGORY_ROLLUP_TABLE +
+            " (stat_month, category, amount, expense_count) VALUES (?, ?, ?, ?)" +
+            " ON DUPLICATE KEY UPDATE amount = amount + VALUES(amount)," +
+            " expense_count = expense_count + VALUES(expense_count)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+
+    // 临时表名固定，且增量追加依赖导入前的最大 id，同一时间只允许一次导入
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    // csv_data 中全部 row_hash 的布隆过滤器，由 reloadLock 保护。追加导入时随插入的行一起更新，
+    // 全量替换后置为 null，下一次追加导入时重新扫描；元素数超过容量后同样重建，保持误判率
+    private RowHashFilter rowHashes;
+
+    public CsvBulkLoader(JdbcTemplate jdbcTemplate, DataSource dataSource) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * 一次导入。调用方必须在 try-with-resources 中使用，未调用 {@link #commit()} 就关闭时本次写入会被丢弃。
+     */
+    public interface Load extends AutoCloseable {
+
+        void add(CsvData csvData) throws SQLException;
+
+        /**
+         * 写入剩余数据并完成提交前的全部工作（如计算汇总表），之后新数据对其他会话仍然不可见。
+         */
+        void prepareCommit() throws SQLException;
+
+        /**
+         * 让新数据对其他会话可见，只做提交或表切换，耗时很短。必须先调用 {@link #prepareCommit()}。
+         * 由 {@link LedgerStore#publish} 在发布锁内调用，与发布新快照合为一步。
+         */
+        void commit() throws SQLException;
+
+        /**
+         * @return 实际写入的行数
+         */
+        long getRowCount();
+
+        /**
+         * @return 因库中已有相同内容而跳过的行数
+         */
+        long getDuplicateCount();
+
+        @Override
+        void close() throws SQLException;
+    }
+
+    /**
+     * 为 csv_data 及各汇总表创建结构相同的空临时表并开始一次全量装载。
+     *
+     * @param writtenRowListener 每批写入后按写入顺序逐行回调，此时 id 已回填
+     */
+    public Load beginReload(Consumer<CsvData> writtenRowListener) throws SQLException {
+        reloadLock.lock();
+        try {
+            for (String table : TABLES) {
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + table + STAGING_SUFFIX);
+                jdbcTemplate.execute("CREATE TABLE " + table + STAGING_SUFFIX + " LIKE " + table);
+            }
+            return new StagingLoad(writtenRowListener);
+        } catch (RuntimeException | SQLException e) {
+            dropTables(STAGING_SUFFIX);
+            reloadLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * 开始一次增量追加：内容哈希与导入前已有行相同的行会被跳过，其余行直接插入 csv_data。
+     * 同一文件内重复的行按原样保留，与全量替换的结果一致。
+     *
+     * @param writtenRowListener 每批插入后按写入顺序逐行回调，此时 id 已回填；重复行不会回调
+     */
+    public Load beginAppend(Consumer<CsvData> writtenRowListener) throws SQLException {
+        reloadLock.lock();
+        try {
+            return new AppendLoad(writtenRowListener);
+        } catch (RuntimeException | SQLException e) {
+            reloadLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * 用 csv_data 的现有数据重新计算全部汇总表，用于汇总表首次上线时的初始化。
+     */
+    @Transactional
+    public void rebuildRollups() {
+        reloadLock.lock();
+        try {
+            for (String table : ROLLUP_TABLES) {
+                jdbcTemplate.update("DELETE FROM " + table);
+            }
+            for (String sql : rollupInsertSql(TABLE, "")) {
+                jdbcTemplate.update(sql);
+            }
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    // 从 sourceTable 计算汇总数据，写入带 targetSuffix 后缀的各汇总表
+    private static String[] rollupInsertSql(String sourceTable, String targetSuffix) {
+        String validRows = " WHERE occurred_at IS NOT NULL AND amount_value IS NOT NULL";
+        String expenseRows = validRows + " AND amount_value < 0 AND category IS NOT NULL";
+        String month = "DATE_FORMAT(occurred_at, '%Y-%m-01')";
+        return new String[]{
+                "INSERT INTO " + DAILY_ROLLUP_TABLE + targetSuffix + " (stat_date, income, expense, record_count)" +
+                        " SELECT DATE(occurred_at)," +
+                        " SUM(CASE WHEN amount_value >= 0 THEN amount_value ELSE 0 END)," +
+                        " SUM(CASE WHEN amount_value < 0 THEN amount_value ELSE 0 END), COUNT(*)" +
+                        " FROM " + sourceTable + validRows + " GROUP BY DATE(occurred_at)",
+                "INSERT INTO " + CATEGORY_ROLLUP_TABLE + targetSuffix + " (category, amount, expense_count)" +
+                        " SELECT category, SUM(-amount_value), COUNT(*)" +
+                        " FROM " + sourceTable + expenseRows + " GROUP BY category",
+                "INSERT INTO " + MONTHLY_CATEGORY_ROLLUP_TABLE + targetSuffix +
+                        " (stat_month, category, amount, expense_count)" +
+                        " SELECT " + month + ", category, SUM(-amount_value), COUNT(*)" +
+                        " FROM " + sourceTable + expenseRows + " GROUP BY " + month + ", category"
+        };
+    }
+
+    private static String insertSql(String table) {
+        return "INSERT INTO " + table +
+                " (category, time, amount, account, book, currency, remark," +
+                " occurred_at, amount_value, row_hash, created_at)" +
+                " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    private static void bind(PreparedStatement statement, CsvData csvData) throws SQLException {
+        setNullableString(statement, 1, csvData.getCategory());
+        setNullableString(statement, 2, csvData.getTime());
+        setNullableString(statement, 3, csvData.getAmount());
+        setNullableString(statement, 4, csvData.getAccount());
+        setNullableString(statement, 5, csvData.getBook());
+        setNullableString(statement, 6, csvData.getCurrency());
+        setNullableString(statement, 7, csvData.getRemark());
+        setNullableTimestamp(statement, 8, csvData.getOccurredAt());
+        if (csvData.getAmountValue() != null) {
+            statement.setBigDecimal(9, csvData.getAmountValue());
+        } else {
+            statement.setNull(9, Types.DECIMAL);
+        }
+        statement.setString(10, csvData.getRowHash());
+        setNullableTimestamp(statement, 11, csvData.getCreatedAt());
+    }
+
+    // 把批处理生成的自增主键按顺序回填到对应的行
+    private static void assignGeneratedIds(PreparedStatement statement, List<CsvData> rows) throws SQLException {
+        try (ResultSet keys = statement.getGeneratedKeys()) {
+            for (CsvData csvData : rows) {
+                if (!keys.next()) {
+                    throw new SQLException("生成的主键数量少于写入的行数");
+                }
+                csvData.setId(keys.getLong(1));
+            }
+        }
+    }
+
+    private static void setNullableString(PreparedStatement statement, int index, String value) throws SQLException {
+        if (value != null) {
+            statement.setString(index, value);
+        } else {
+            statement.setNull(index, Types.VARCHAR);
+        }
+    }
+
+    private static void setNullableTimestamp(PreparedStatement statement, int index, LocalDateTime value)
+            throws SQLException {
+        if (value != null) {
+            statement.setTimestamp(index, Timestamp.valueOf(value));
+        } else {
+            statement.setNull(index, Types.TIMESTAMP);
+        }
+    }
+
+    private void dropTables(String suffix) {
+        for (String table : TABLES) {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + table + suffix);
+        }
+    }
+
+    // 调用方持有 reloadLock；只扫描 row_hash 索引，不读取整行
+    private RowHashFilter rowHashes() {
+        if (rowHashes != null && !rowHashes.isFull()) {
+            return rowHashes;
+        }
+        long start = System.currentTimeMillis();
+        long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + TABLE, Long.class);
+        // 留出余量，之后多次追加导入都不需要重建
+        RowHashFilter filter = new RowHashFilter(Math.max(count * 2, 64 * 1024));
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "SELECT row_hash FROM " + TABLE + " WHERE row_hash IS NOT NULL",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            return ps;
+        }, (RowCallbackHandler) rs -> filter.add(rs.getString(1)));
+        logger.info("Loaded {} row hashes into the duplicate filter in {} ms",
+                count, System.currentTimeMillis() - start);
+        rowHashes = filter;
+        return filter;
+    }
+
+    private class StagingLoad implements Load {
+
+        private final Consumer<CsvData> writtenRowListener;
+        private final Connection connection;
+        private final boolean originalAutoCommit;
+        private final PreparedStatement statement;
+        private final List<CsvData> pending = new ArrayList<>(BATCH_SIZE);
+        private long rowCount;
+        private boolean swapped;
+
+        private StagingLoad(Consumer<CsvData> writtenRowListener) throws SQLException {
+            this.writtenRowListener = writtenRowListener;
+            this.connection = DataSourceUtils.getConnection(dataSource);
+            this.originalAutoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            this.statement = connection.prepareStatement(insertSql(TABLE + STAGING_SUFFIX),
+                    Statement.RETURN_GENERATED_KEYS);
+        }
+
+        @Override
+        public void add(CsvData csvData) throws SQLException {
+            bind(statement, csvData);
+            statement.addBatch();
+            pending.add(csvData);
+
+            if (pending.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        // 临时表对其他会话不可见，每批单独提交，避免一次导入积累过大的 undo 日志
+        private void flush() throws SQLException {
+            if (pending.isEmpty()) {
+                return;
+            }
+            statement.executeBatch();
+            assignGeneratedIds(statement, pending);
+            connection.commit();
+            rowCount += pending.size();
+            pending.forEach(writtenRowListener);
+            pending.clear();
+        }
+
+        /**
+         * 写入剩余数据，由临时表计算各汇总表。
+         */
+        @Override
+        public void prepareCommit() throws SQLException {
+            flush();
+            for (String sql : rollupInsertSql(TABLE + STAGING_SUFFIX, STAGING_SUFFIX)) {
+                jdbcTemplate.update(sql);
+            }
+        }
+
+        /**
+         * 用一条 RENAME TABLE 原子替换 csv_data 及全部汇总表，旧表在 {@link #close()} 时删除。
+         */
+        @Override
+        public void commit() {
+            StringBuilder rename = new StringBuilder("RENAME TABLE ");
+            for (int i = 0; i < TABLES.length; i++) {
+                String table = TABLES[i];
+                if (i > 0) {
+                    rename.append(", ");
+                }
+                rename.append(table).append(" TO ").append(table).append(OLD_SUFFIX).append(", ")
+                        .append(table).append(STAGING_SUFFIX).append(" TO ").append(table);
+            }
+            jdbcTemplate.execute(rename.toString());
+            swapped = true;
+            rowHashes = null;
+            logger.info("Swapped in {} rows into {}", rowCount, TABLE);
+        }
+
+        @Override
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        @Override
+        public long getDuplicateCount() {
+            return 0;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                statement.close();
+                connection.setAutoCommit(originalAutoCommit);
+            } finally {
+                DataSourceUtils.releaseConnection(connection, dataSource);
+                try {
+                    dropTables(swapped ? OLD_SUFFIX : STAGING_SUFFIX);
+                } finally {
+                    reloadLock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * 增量追加。所有写入（明细行和汇总表增量）在同一个事务中完成，提交前其他会话看不到任何变化。
+     * <p>
+     * 判重分两步：先查内存中的布隆过滤器（跨多次导入保留，不需要每次扫描全表），判定“一定不存在”的行直接插入；
+     * 判定“可能存在”的行再用 row_hash 索引批量查询确认。重新导入大部分内容重复的文件时，
+     * 开销主要花在真正的新行上。
+     */
+    private class AppendLoad implements Load {
+
+        private final Consumer<CsvData> writtenRowListener;
+        private final Connection connection;
+        private final boolean originalAutoCommit;
+        private final PreparedStatement statement;
+        private final long maxExistingId;
+        private final RowHashFilter existingRows;
+        private final List<CsvData> pending = new ArrayList<>(APPEND_BATCH_SIZE);
+
+        private final Map<LocalDate, RollupDelta> dailyDeltas = new HashMap<>();
+        private final Map<String, RollupDelta> categoryDeltas = new HashMap<>();
+        private final Map<MonthlyCategoryRollup.Key, RollupDelta> monthlyCategoryDeltas = new HashMap<>();
+
+        private long rowCount;
+        private long duplicateCount;
+        private boolean committed;
+
+        private AppendLoad(Consumer<CsvData> writtenRowListener) throws SQLException {
+            this.writtenRowListener = writtenRowListener;
+            this.maxExistingId = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(MAX(id), 0) FROM " + TABLE, Long.class);
+            this.existingRows = rowHashes();
+            this.connection = DataSourceUtils.getConnection(dataSource);
+            this.originalAutoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            this.statement = connection.prepareStatement(insertSql(TABLE), Statement.RETURN_GENERATED_KEYS);
+        }
+
+        @Override
+        public void add(CsvData csvData) throws SQLException {
+            pending.add(csvData);
+            if (pending.size() >= APPEND_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() throws SQLException {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            Set<String> existing = findExisting();
+            List<CsvData> inserted = new ArrayList<>(pending.size());
+            for (CsvData csvData : pending) {
+                if (existing.contains(csvData.getRowHash())) {
+                    duplicateCount++;
+                    continue;
+                }
+                bind(statement, csvData);
+                statement.addBatch();
+                accumulateRollups(csvData);
+                inserted.add(csvData);
+            }
+            pending.clear();
+            if (inserted.isEmpty()) {
+                return;
+            }
+            statement.executeBatch();
+            assignGeneratedIds(statement, inserted);
+            // 事务回滚时过滤器中会多出这些行，只会让之后的判重多查一次库，不影响结果
+            for (CsvData csvData : inserted) {
+                existingRows.add(csvData.getRowHash());
+            }
+            rowCount += inserted.size();
+            inserted.forEach(writtenRowListener);
+        }
+
+        // 只有布隆过滤器判定可能存在的行才需要查库确认，且只与导入开始前已有的行比较
+        private Set<String> findExisting() throws SQLException {
+            List<String> candidates = new ArrayList<>();
+            for (CsvData csvData : pending) {
+                if (existingRows.mightContain(csvData.getRowHash())) {
+                    candidates.add(csvData.getRowHash());
+                }
+            }
+            Set<String> existing = new HashSet<>();
+            if (candidates.isEmpty()) {
+                return existing;
+            }
+
+            StringBuilder sql = new StringBuilder("SELECT row_hash FROM ").append(TABLE)
+                    .append(" WHERE id <= ? AND row_hash IN (");
+            for (int i = 0; i < candidates.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(')');
+
+            try (PreparedStatement query = connection.prepareStatement(sql.toString())) {
+                query.setLong(1, maxExistingId);
+                for (int i = 0; i < candidates.size(); i++) {
+                    query.setString(i + 2, candidates.get(i));
+                }
+                try (ResultSet rs = query.executeQuery()) {
+                    while (rs.next()) {
+                        existing.add(rs.getString(1));
+                    }
+                }
+            }
+            return existing;
+        }
+
+        private void accumulateRollups(CsvData csvData) {
+            LocalDateTime occurredAt = csvData.getOccurredAt();
+            long amount = csvData.getAmountCents();
+            if (occurredAt == null || amount == LedgerMoney.INVALID) {
+                return;
+            }
+
+            LocalDate day = occurredAt.toLocalDate();
+            RollupDelta daily = dailyDeltas.computeIfAbsent(day, key -> new RollupDelta());
+            if (amount >= 0) {
+                daily.income += amount;
+            } else {
+                daily.expense += amount;
+            }
+            daily.count++;
+
+            String category = csvData.getCategory();
+            if (amount < 0 && category != null) {
+                long expense = -amount;
+                categoryDeltas.computeIfAbsent(category, key -> new RollupDelta()).addExpense(expense);
+                monthlyCategoryDeltas.computeIfAbsent(
+                        new MonthlyCategoryRollup.Key(day.withDayOfMonth(1), category),
+                        key -> new RollupDelta()).addExpense(expense);
+            }
+        }
+
+        /**
+         * 写入剩余数据并累加各汇总表，仍在未提交的事务中。
+         */
+        @Override
+        public void prepareCommit() throws SQLException {
+            flush();
+
+            try (PreparedStatement upsert = connection.prepareStatement(DAILY_ROLLUP_UPSERT_SQL)) {
+                for (Map.Entry<LocalDate, RollupDelta> entry : dailyDeltas.entrySet()) {
+                    upsert.setDate(1, Date.valueOf(entry.getKey()));
+                    upsert.setBigDecimal(2, LedgerMoney.toBigDecimal(entry.getValue().income));
+                    upsert.setBigDecimal(3, LedgerMoney.toBigDecimal(entry.getValue().expense));
+                    upsert.setLong(4, entry.getValue().count);
+                    upsert.addBatch();
+                }
+                upsert.executeBatch();
+            }
+            try (PreparedStatement upsert = connection.prepareStatement(CATEGORY_ROLLUP_UPSERT_SQL)) {
+                for (Map.Entry<String, RollupDelta> entry : categoryDeltas.entrySet()) {
+                    upsert.setString(1, entry.getKey());
+                    upsert.setBigDecimal(2, LedgerMoney.toBigDecimal(entry.getValue().expense));
+                    upsert.setLong(3, entry.getValue().count);
+                    upsert.addBatch();
+                }
+                upsert.executeBatch();
+            }
+            try (PreparedStatement upsert = connection.prepareStatement(MONTHLY_CATEGORY_ROLLUP_UPSERT_SQL)) {
+                for (Map.Entry<MonthlyCategoryRollup.Key, RollupDelta> entry : monthlyCategoryDeltas.entrySet()) {
+                    upsert.setDate(1, Date.valueOf(entry.getKey().getStatMonth()));
+                    upsert.setString(2, entry.getKey().getCategory());
+                    upsert.setBigDecimal(3, LedgerMoney.toBigDecimal(entry.getValue().expense));
+                    upsert.setLong(4, entry.getValue().count);
+                    upsert.addBatch();
+                }
+                upsert.executeBatch();
+            }
+        }
+
+        @Override
+        public void commit() throws SQLException {
+            connection.commit();
+            committed = true;
+            logger.info("Appended {} rows into {}, skipped {} duplicates", rowCount, TABLE, duplicateCount);
+        }
+
+        @Override
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        @Override
+        public long getDuplicateCount() {
+            return duplicateCount;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                if (!committed) {
+                    connection.rollback();
+                }
+                statement.close();
+                connection.setAutoCommit(originalAutoCommit);
+            } finally {
+                DataSourceUtils.releaseConnection(connection, dataSource);
+                reloadLock.unlock();
+            }
+        }
+    }
+
+    // 一次追加导入对某个汇总键的增量，金额单位为分；分类汇总只使用 expense（取绝对值）和 count
+    private static final class RollupDelta {
+        private long income;
+        private long expense;
+        private long count;
+
+        private void addExpense(long amount) {
+            expense += amount;
+            count++;
+        }
+    }
+}
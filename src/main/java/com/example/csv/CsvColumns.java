@@ -0,0 +1,73 @@
+package com.example.csv;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 由表头确定的各字段列下标，用于把分词结果映射为 {@link CsvData}。创建后不可变，可以在多个线程间共享。
+ */
+final class CsvColumns {
+
+    private static final Map<String, String> KEY_MAPPING = new HashMap<>();
+
+    static {
+        KEY_MAPPING.put("\uFEFF分类", "category");
+        KEY_MAPPING.put("时间", "time");
+        KEY_MAPPING.put("金额", "amount");
+        KEY_MAPPING.put("账户", "account");
+        KEY_MAPPING.put("账本", "book");
+        KEY_MAPPING.put("货币", "currency");
+        KEY_MAPPING.put("备注", "remark");
+    }
+
+    // 各字段在CSV行中的列下标，-1表示文件中没有该列
+    private int categoryIndex = -1;
+    private int timeIndex = -1;
+    private int amountIndex = -1;
+    private int accountIndex = -1;
+    private int bookIndex = -1;
+    private int currencyIndex = -1;
+    private int remarkIndex = -1;
+    private final int columnCount;
+
+    /**
+     * @param header 已读到表头记录的分词器
+     */
+    CsvColumns(CsvTokenizer header) {
+        columnCount = header.fieldCount();
+        for (int i = 0; i < columnCount; i++) {
+            String name = header.field(i);
+            switch (KEY_MAPPING.getOrDefault(name, name)) {
+                case "category" -> categoryIndex = i;
+                case "time" -> timeIndex = i;
+                case "amount" -> amountIndex = i;
+                case "account" -> accountIndex = i;
+                case "book" -> bookIndex = i;
+                case "currency" -> currencyIndex = i;
+                case "remark" -> remarkIndex = i;
+                default -> {
+                }
+            }
+        }
+    }
+
+    /**
+     * 把分词器当前的记录映射为 {@link CsvData}，多出的列被忽略，缺少的列为 null。
+     */
+    CsvData toCsvData(CsvTokenizer tokenizer) {
+        int size = Math.min(columnCount, tokenizer.fieldCount());
+        return new CsvData(
+                valueAt(tokenizer, categoryIndex, size),
+                valueAt(tokenizer, timeIndex, size),
+                valueAt(tokenizer, amountIndex, size),
+                valueAt(tokenizer, accountIndex, size),
+                valueAt(tokenizer, bookIndex, size),
+                valueAt(tokenizer, currencyIndex, size),
+                valueAt(tokenizer, remarkIndex, size)
+        );
+    }
+
+    private static String valueAt(CsvTokenizer tokenizer, int index, int size) {
+        return index >= 0 && index < size ? tokenizer.field(index) : null;
+    }
+}
@@ -1,127 +1,396 @@
 package com.example.csv;
 
 import com.example.dto.CsvResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.math.BigDecimal;
+import java.io.IOException;
 import java.util.*;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/csv")
 @CrossOrigin(origins = "*")
 public class CsvController {
 
-    private static final String CSV_MIME_TYPE = "text/csv";
-    private static final String CSV_FILE_EXTENSION = ".csv";
+    // 除CSV外也接受 gzip 压缩的CSV和包含多个CSV的ZIP压缩包，导入时按文件内容识别格式
+    private static final Set<String> CSV_MIME_TYPES = Set.of("text/csv",
+            "application/gzip", "application/x-gzip", "application/zip", "application/x-zip-compressed");
+    private static final List<String> CSV_FILE_EXTENSIONS = List.of(".csv", ".csv.gz", ".gz", ".zip");
+    private static final MediaType NDJSON_MEDIA_TYPE = MediaType.parseMediaType("application/x-ndjson");
+    private static final String NDJSON_LINE_SEPARATOR = "\n";
 
     @Autowired
     private CsvService csvService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CsvResultCache resultCache;
+
+    @Autowired
+    private Base64UploadDecoder base64UploadDecoder;
+
+    @Autowired
+    private CsvImportJobService importJobService;
+
+    /**
+     * async=true 时只保存文件并提交后台导入，立即返回任务 id，进度通过 /csv/import/{jobId} 查询。
+     */
     @PostMapping("/upload")
     public ResponseEntity<CsvResponse> uploadAndSaveCsvFile(
-            @RequestParam(value = "file", required = false) MultipartFile file) {
+            @RequestParam(value = "file", required = false) MultipartFile file,
+            @RequestParam(value = "mode", required = false) String mode,
+            @RequestParam(value = "async", defaultValue = "false") boolean async) {
         try {
             validateFile(file);
-            List<Map<String, String>> data = csvService.parseCsvFile(file);
-            csvService.saveOriginDataToDatabase(data);
-            return buildSuccessResponse("CSV文件解析成功并已保存到数据库", data);
+            if (async) {
+                CsvImportJob job = importJobService.submit(file, CsvImportMode.parse(mode));
+                return ResponseEntity.status(HttpStatus.ACCEPTED)
+                        .body(new CsvResponse(true, "导入任务已提交", job));
+            }
+            CsvImportResult result = csvService.importCsvFile(file, CsvImportMode.parse(mode));
+            return ResponseEntity.ok(new CsvResponse(true, "CSV文件解析成功并已保存到数据库", result));
         } catch (IllegalArgumentException e) {
             return buildBadRequestResponse("参数错误: " + e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new CsvResponse(false, e.getMessage(), null));
         } catch (Exception e) {
             return buildErrorResponse("解析文件时出错: " + e.getMessage());
         }
     }
 
+    /**
+     * 以 JSON 提交 Base64 编码的CSV文件（格式见 {@link FileUploadRequest}），边读取请求体边解码导入，
+     * 不在内存中保留 Base64 字符串或解码后的整个文件。
+     */
+    @PostMapping(value = "/upload-base64", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CsvResponse> uploadBase64CsvFile(
+            HttpServletRequest request,
+            @RequestParam(value = "mode", required = false) String mode) {
+        try {
+            CsvImportMode importMode = CsvImportMode.parse(mode);
+            try (Base64UploadStream content = base64UploadDecoder.open(request.getInputStream())) {
+                if (!isCsvFileName(content.getFileName())) {
+                    throw new IllegalArgumentException("请上传CSV格式的文件（支持 .csv、.csv.gz 和 .zip）");
+                }
+                // 按请求体长度估算解码后的大小，用于选择是否多线程解析
+                long contentLength = request.getContentLengthLong();
+                long size = contentLength < 0 ? -1 : contentLength / 4 * 3;
+                CsvImportResult result = csvService.importCsv(content, size, importMode);
+                return ResponseEntity.ok(new CsvResponse(true, "CSV文件解析成功并已保存到数据库", result));
+            }
+        } catch (IllegalArgumentException e) {
+            return buildBadRequestResponse("参数错误: " + e.getMessage());
+        } catch (Exception e) {
+            return buildErrorResponse("解析文件时出错: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询后台导入任务的状态：已解析行数、已写入行数、吞吐量，结束后包含导入结果或错误信息。
+     */
+    @GetMapping("/import/{jobId}")
+    public ResponseEntity<CsvResponse> getImportJob(@PathVariable("jobId") String jobId) {
+        CsvImportJob job = importJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new CsvResponse(false, "导入任务不存在: " + jobId, null));
+        }
+        return ResponseEntity.ok(new CsvResponse(true, "数据获取成功", job));
+    }
+
+    /**
+     * 返回按天汇总的收支和第一页明细；后续页通过 /csv/data/rows 加上 nextCursor 获取。
+     */
     @GetMapping("/data")
     public ResponseEntity<CsvResponse> getProcessedData(
+            @RequestParam(value = "startDate", required = false) String startDate,
+            @RequestParam(value = "endDate", required = false) String endDate,
+            @RequestParam(value = "pageSize", required = false) Integer pageSize) {
+        try {
+            // 明细来自快照、按天汇总来自汇总表，在同一个读锁区间内读取，不会混用两个版本
+            Map<String, Object> data = resultCache.get("data", () -> csvService.readConsistent(snapshot -> {
+                LedgerSnapshot.Range range = csvService.filterDataByDateRange(snapshot, startDate, endDate);
+                CsvDataPage page = csvService.getOriginDataPage(snapshot, range, null, pageSize);
+                List<Map<String, String>> total = csvService.aggregateDataByDate(startDate, endDate);
+
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("total", total);
+                result.put("originData", page.getRows());
+                result.put("nextCursor", page.getNextCursor());
+                result.put("totalRows", range.size());
+                return result;
+            }), startDate, endDate, Objects.toString(pageSize, null));
+            return ResponseEntity.ok(new CsvResponse(true, "数据获取成功", data));
+        } catch (IllegalArgumentException e) {
+            return buildBadRequestResponse("参数错误: " + e.getMessage());
+        } catch (Exception e) {
+            return buildErrorResponse("获取数据时出错: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 任意日期范围的收入、支出、结余和分类支出合计，常数时间计算，不返回明细。
+     */
+    @GetMapping("/data/summary")
+    public ResponseEntity<CsvResponse> getRangeSummary(
             @RequestParam(value = "startDate", required = false) String startDate,
             @RequestParam(value = "endDate", required = false) String endDate) {
         try {
-            List<Map<String, String>> originData = csvService.getOriginDataFromDatabase();
-            List<Map<String, String>> filteredData = filterDataIfNeeded(originData, startDate, endDate);
-            List<Map<String, String>> total = csvService.aggregateDataByDate(filteredData);
-            return buildSuccessResponse("数据获取成功", total, filteredData);
+            Map<String, Object> summary = csvService.getRangeSummary(csvService.getSnapshot(), startDate, endDate);
+            return ResponseEntity.ok(new CsvResponse(true, "数据获取成功", summary));
+        } catch (IllegalArgumentException e) {
+            return buildBadRequestResponse("参数错误: " + e.getMessage());
         } catch (Exception e) {
             return buildErrorResponse("获取数据时出错: " + e.getMessage());
         }
     }
 
-    @GetMapping("/expense-category-amount")
-    public ResponseEntity<CsvResponse> getExpenseCategoryAmount() {
+    /**
+     * 按游标分页获取明细，不包含汇总数据。
+     */
+    @GetMapping("/data/rows")
+    public ResponseEntity<CsvResponse> getOriginDataPage(
+            @RequestParam(value = "startDate", required = false) String startDate,
+            @RequestParam(value = "endDate", required = false) String endDate,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "pageSize", required = false) Integer pageSize) {
+        try {
+            Supplier<CsvDataPage> loader = () -> {
+                LedgerSnapshot snapshot = csvService.getSnapshot();
+                LedgerSnapshot.Range range = csvService.filterDataByDateRange(snapshot, startDate, endDate);
+                return csvService.getOriginDataPage(snapshot, range, cursor, pageSize);
+            };
+            // 只缓存第一页；带游标的页在快照上二分定位即可，缓存它们只会挤掉统计结果
+            CsvDataPage page = isFirstPage(cursor)
+                    ? resultCache.get("data/rows", loader, startDate, endDate, Objects.toString(pageSize, null))
+                    : loader.get();
+            return ResponseEntity.ok(new CsvResponse(true, "数据获取成功", page));
+        } catch (IllegalArgumentException e) {
+            return buildBadRequestResponse("参数错误: " + e.getMessage());
+        } catch (Exception e) {
+            return buildErrorResponse("获取数据时出错: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 按关键词搜索备注和分类，可限定日期范围，按游标分页。
+     */
+    @GetMapping("/search")
+    public ResponseEntity<CsvResponse> search(
+            @RequestParam("q") String query,
+            @RequestParam(value = "startDate", required = false) String startDate,
+            @RequestParam(value = "endDate", required = false) String endDate,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "pageSize", required = false) Integer pageSize) {
+        try {
+            Supplier<Map<String, Object>> loader = () -> {
+                LedgerSnapshot snapshot = csvService.getSnapshot();
+                LedgerSnapshot.Range range = csvService.filterDataByDateRange(snapshot, startDate, endDate);
+                return csvService.search(snapshot, range, query, cursor, pageSize);
+            };
+            Map<String, Object> result = isFirstPage(cursor)
+                    ? resultCache.get("search", loader, query, startDate, endDate, Objects.toString(pageSize, null))
+                    : loader.get();
+            return ResponseEntity.ok(new CsvResponse(true, "搜索成功", result));
+        } catch (IllegalArgumentException e) {
+            return buildBadRequestResponse("参数错误: " + e.getMessage());
+        } catch (Exception e) {
+            return buildErrorResponse("搜索时出错: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 与 /csv/data 相同的 success/message/data 结构，但 originData 包含日期范围内的全部明细，
+     * 用 JsonGenerator 从快照逐行写出，内存占用和首字节时间与数据量无关。
+     */
+    @GetMapping("/data/stream")
+    public ResponseEntity<StreamingResponseBody> streamProcessedData(
+            @RequestParam(value = "startDate", required = false) String startDate,
+            @RequestParam(value = "endDate", required = false) String endDate) {
         try {
-            // 1. 从服务层获取原始数据
-            Map<String, Double> categoryAmountMap = csvService.getExpenseCategoryAmount();
+            // 快照和按天汇总在同一个读锁区间内读取；之后逐行写出的快照不可变，不需要持锁
+            StreamSource source = csvService.readConsistent(snapshot -> new StreamSource(snapshot,
+                    csvService.filterDataByDateRange(snapshot, startDate, endDate),
+                    csvService.aggregateDataByDate(startDate, endDate)));
 
-            // 2. 转换为所需的List<Map<String, String>>格式
-            List<Map<String, String>> resultList = new ArrayList<>();
+            return buildStreamingSuccessResponse("数据获取成功", generator -> {
+                generator.writeStartObject();
+                generator.writeFieldName("total");
+                generator.writeObject(source.total());
+                generator.writeNumberField("totalRows", source.range().size());
+                generator.writeArrayFieldStart("originData");
+                csvService.writeOriginRecords(source.snapshot(), source.range(), generator);
+                generator.writeEndArray();
+                generator.writeEndObject();
+            });
+        } catch (IllegalArgumentException e) {
+            return buildStreamingErrorResponse(HttpStatus.BAD_REQUEST, "参数错误: " + e.getMessage());
+        } catch (Exception e) {
+            return buildStreamingErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR, "获取数据时出错: " + e.getMessage());
+        }
+    }
 
-            for (Map.Entry<String, Double> entry : categoryAmountMap.entrySet()) {
-                Map<String, String> item = new HashMap<>();
-                item.put("category", entry.getKey());
+    /**
+     * 以 NDJSON（每行一个 JSON 对象）流式导出日期范围内的全部明细，边生成边写出，不在内存中拼装整个结果。
+     */
+    @GetMapping("/data/export")
+    public ResponseEntity<StreamingResponseBody> exportOriginData(
+            @RequestParam(value = "startDate", required = false) String startDate,
+            @RequestParam(value = "endDate", required = false) String endDate) {
+        try {
+            LedgerSnapshot snapshot = csvService.getSnapshot();
+            LedgerSnapshot.Range range = csvService.filterDataByDateRange(snapshot, startDate, endDate);
 
-                // 格式化金额为字符串，保留2位小数
-                String formattedAmount = String.format("%.2f", entry.getValue());
-                item.put("amount", formattedAmount);
+            StreamingResponseBody body = outputStream -> {
+                try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                    generator.setPrettyPrinter(new MinimalPrettyPrinter(NDJSON_LINE_SEPARATOR));
+                    csvService.writeOriginRecords(snapshot, range, generator);
+                    if (range.size() > 0) {
+                        generator.writeRaw(NDJSON_LINE_SEPARATOR);
+                    }
+                }
+            };
+            return ResponseEntity.ok()
+                    .contentType(NDJSON_MEDIA_TYPE)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"csv-data.ndjson\"")
+                    .body(body);
+        } catch (IllegalArgumentException e) {
+            return buildStreamingErrorResponse(HttpStatus.BAD_REQUEST, "参数错误: " + e.getMessage());
+        } catch (Exception e) {
+            return buildStreamingErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR, "导出数据时出错: " + e.getMessage());
+        }
+    }
 
-                resultList.add(item);
-            }
+    /**
+     * 按 day/week/month/quarter/year 汇总金额，pivot 可选 category/account/book，供前端直接绘制图表。
+     */
+    @GetMapping("/aggregate")
+    public ResponseEntity<CsvResponse> aggregate(
+            @RequestParam(value = "startDate", required = false) String startDate,
+            @RequestParam(value = "endDate", required = false) String endDate,
+            @RequestParam(value = "granularity", required = false) String granularity,
+            @RequestParam(value = "pivot", required = false) String pivot) {
+        try {
+            List<Map<String, Object>> result = resultCache.get("aggregate",
+                    () -> csvService.aggregate(csvService.getSnapshot(), startDate, endDate, granularity, pivot),
+                    startDate, endDate, granularity, pivot);
+            return ResponseEntity.ok(new CsvResponse(true, "数据获取成功", result));
+        } catch (IllegalArgumentException e) {
+            return buildBadRequestResponse("参数错误: " + e.getMessage());
+        } catch (Exception e) {
+            return buildErrorResponse("获取数据时出错: " + e.getMessage());
+        }
+    }
 
-            // 3. 返回转换后的数据
+    @GetMapping("/expense-category-amount")
+    public ResponseEntity<CsvResponse> getExpenseCategoryAmount(
+            @RequestParam(value = "startDate", required = false) String startDate,
+            @RequestParam(value = "endDate", required = false) String endDate) {
+        try {
+            List<Map<String, String>> resultList = resultCache.get("expense-category-amount",
+                    () -> toCategoryAmountList(csvService.getExpenseCategoryAmount(startDate, endDate)),
+                    startDate, endDate);
             return ResponseEntity.ok(new CsvResponse(true, "数据获取成功", resultList));
 
+        } catch (IllegalArgumentException e) {
+            return buildBadRequestResponse("参数错误: " + e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(500)
                     .body(new CsvResponse(false, "获取数据时出错: " + e.getMessage(), null));
         }
     }
 
+    /**
+     * stats=true 时每个分类附带单笔支出的中位数、p90、p99 和最常见的备注。
+     */
     @GetMapping("/expense-category-ranking")
-    public ResponseEntity<CsvResponse> getExpenseCategoryRanking() {
+    public ResponseEntity<CsvResponse> getExpenseCategoryRanking(
+            @RequestParam(value = "startDate", required = false) String startDate,
+            @RequestParam(value = "endDate", required = false) String endDate,
+            @RequestParam(value = "stats", defaultValue = "false") boolean stats) {
         try {
-            List<Map<String, Object>> rankingList = csvService.getExpenseCategoryRanking();
+            List<Map<String, Object>> rankingList = resultCache.get("expense-category-ranking",
+                    () -> csvService.getExpenseCategoryRanking(startDate, endDate, stats),
+                    startDate, endDate, String.valueOf(stats));
             return buildSuccessResponse("数据获取成功", rankingList);
+        } catch (IllegalArgumentException e) {
+            return buildBadRequestResponse("参数错误: " + e.getMessage());
         } catch (Exception e) {
             return buildErrorResponse("获取数据时出错: " + e.getMessage());
         }
     }
 
+    /**
+     * 结果缓存的命中率等统计信息。
+     */
+    @GetMapping("/cache-stats")
+    public ResponseEntity<CsvResponse> getCacheStats() {
+        return ResponseEntity.ok(new CsvResponse(true, "数据获取成功", resultCache.getStats()));
+    }
+
     // =============== 私有工具方法 ===============
 
+    // 转换为所需的List<Map<String, String>>格式
+    private List<Map<String, String>> toCategoryAmountList(Map<String, Long> categoryAmountMap) {
+        List<Map<String, String>> resultList = new ArrayList<>();
+
+        for (Map.Entry<String, Long> entry : categoryAmountMap.entrySet()) {
+            Map<String, String> item = new HashMap<>();
+            item.put("category", entry.getKey());
+
+            // 金额以分为单位，格式化为保留2位小数的字符串
+            item.put("amount", LedgerMoney.formatCents(entry.getValue()));
+
+            resultList.add(item);
+        }
+
+        return resultList;
+    }
+
+    private static boolean isFirstPage(String cursor) {
+        return cursor == null || cursor.isBlank();
+    }
+
+    // /data/stream 在同一个读锁区间内取得的快照、日期区间和按天汇总
+    private record StreamSource(LedgerSnapshot snapshot, LedgerSnapshot.Range range,
+                                List<Map<String, String>> total) {
+    }
+
     private void validateFile(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             throw new IllegalArgumentException("请上传有效的CSV文件");
         }
         if (!isValidCsvFile(file)) {
-            throw new IllegalArgumentException("请上传CSV格式的文件");
+            throw new IllegalArgumentException("请上传CSV格式的文件（支持 .csv、.csv.gz 和 .zip）");
         }
     }
 
     private boolean isValidCsvFile(MultipartFile file) {
         String contentType = file.getContentType();
         String fileName = file.getOriginalFilename();
-        return (contentType != null && contentType.equals(CSV_MIME_TYPE)) ||
-                (fileName != null && fileName.toLowerCase().endsWith(CSV_FILE_EXTENSION));
+        return (contentType != null && CSV_MIME_TYPES.contains(contentType)) || isCsvFileName(fileName);
     }
 
-    private List<Map<String, String>> filterDataIfNeeded(List<Map<String, String>> originData,
-                                                         String startDate, String endDate) {
-        if (startDate != null || endDate != null) {
-            return csvService.filterDataByDateRange(originData, startDate, endDate);
+    private boolean isCsvFileName(String fileName) {
+        if (fileName == null) {
+            return false;
         }
-        return originData;
-    }
-
-    private Map<String, Double> formatCategoryAmounts(Map<String, Double> categoryAmountMap) {
-        Map<String, Double> formattedMap = new LinkedHashMap<>();
-        categoryAmountMap.forEach((key, value) -> {
-            BigDecimal bd = BigDecimal.valueOf(value)
-                    .setScale(2, BigDecimal.ROUND_HALF_UP);
-            formattedMap.put(key, bd.doubleValue());
-        });
-        return formattedMap;
+        String lowerCaseName = fileName.toLowerCase();
+        return CSV_FILE_EXTENSIONS.stream().anyMatch(lowerCaseName::endsWith);
     }
 
     // =============== 响应构建方法 ===============
@@ -130,12 +399,6 @@ public class CsvController {
         return ResponseEntity.ok(new CsvResponse(true, message, (List<Map<String, String>>) data));
     }
 
-    private ResponseEntity<CsvResponse> buildSuccessResponse(String message,
-                                                             List<Map<String, String>> total,
-                                                             List<Map<String, String>> originData) {
-        return ResponseEntity.ok(new CsvResponse(true, message, total, originData));
-    }
-
     private ResponseEntity<CsvResponse> buildBadRequestResponse(String message) {
         return ResponseEntity.badRequest().body(new CsvResponse(false, message, null));
     }
@@ -144,4 +407,31 @@ public class CsvController {
         return ResponseEntity.internalServerError()
                 .body(new CsvResponse(false, message, null));
     }
+
+    // 先写出 success 和 message，再由 dataWriter 直接写出 data 字段的值；开始写出后出错只能中断响应
+    private ResponseEntity<StreamingResponseBody> buildStreamingSuccessResponse(String message, DataWriter dataWriter) {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartObject();
+                generator.writeBooleanField("success", true);
+                generator.writeStringField("message", message);
+                generator.writeFieldName("data");
+                dataWriter.write(generator);
+                generator.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    @FunctionalInterface
+    private interface DataWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    // 流式接口的返回类型固定为 StreamingResponseBody，出错时同样以 CsvResponse 格式写出
+    private ResponseEntity<StreamingResponseBody> buildStreamingErrorResponse(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(outputStream -> objectMapper.writeValue(outputStream, new CsvResponse(false, message, null)));
+    }
 }
\ No newline at end of file
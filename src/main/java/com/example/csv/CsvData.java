@@ -1,11 +1,31 @@
 package com.example.csv;
 
 import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.HexFormat;
 
 @Entity
-@Table(name = "csv_data")
+@Table(name = "csv_data", indexes = {
+        @Index(name = "idx_csv_data_occurred_at", columnList = "occurred_at, amount_value"),
+        @Index(name = "idx_csv_data_category_occurred_at", columnList = "category, occurred_at, amount_value"),
+        @Index(name = "idx_csv_data_row_hash", columnList = "row_hash")
+})
 public class CsvData {
+    // 计算行哈希时各字段之间的分隔符，不会出现在正常的CSV内容中
+    private static final char FIELD_SEPARATOR = '\u001F';
+
+    private static final ThreadLocal<MessageDigest> ROW_DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -18,6 +38,22 @@ public class CsvData {
     private String currency;
     private String remark;
 
+    // 由 time 解析出的时间，无法解析时为 null，用于按时间范围查询和聚合
+    @Column(name = "occurred_at")
+    private LocalDateTime occurredAt;
+
+    // 由 amount 解析出的金额，无法解析时为 null
+    @Column(name = "amount_value", precision = 15, scale = 2)
+    private BigDecimal amountValue;
+
+    // 以分为单位的 amountValue，导入时与 amountValue 一起解析；从数据库加载的实体在首次读取时由 amountValue 换算
+    @Transient
+    private long amountCents = LedgerMoney.INVALID;
+
+    // 行内容哈希（32位十六进制），追加导入时用于跳过已存在的行
+    @Column(name = "row_hash", length = 32)
+    private String rowHash;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
@@ -34,9 +70,44 @@ public class CsvData {
         this.book = book;
         this.currency = currency;
         this.remark = remark;
+        this.occurredAt = parseTime(time);
+        this.amountCents = LedgerMoney.parseCents(amount);
+        this.amountValue = amountCents == LedgerMoney.INVALID ? null : LedgerMoney.toBigDecimal(amountCents);
+        this.rowHash = computeRowHash(time, occurredAt, amount, amountCents, account, category, remark);
         this.createdAt = LocalDateTime.now();
     }
 
+    /**
+     * 行内容哈希，由时间、金额、账户、分类、备注计算。时间和金额能解析时使用解析后的值，
+     * 因此 "2024/1/5 9:30" 与 "2024-01-05 09:30:00"、"12.5" 与 "12.50" 视为同一行。
+     */
+    public static String computeRowHash(String time, LocalDateTime occurredAt, String amount, long amountCents,
+                                        String account, String category, String remark) {
+        StringBuilder key = new StringBuilder(128)
+                .append(occurredAt != null ? occurredAt.toString() : normalize(time)).append(FIELD_SEPARATOR)
+                .append(amountCents != LedgerMoney.INVALID ? LedgerMoney.formatCents(amountCents) : normalize(amount))
+                .append(FIELD_SEPARATOR)
+                .append(normalize(account)).append(FIELD_SEPARATOR)
+                .append(normalize(category)).append(FIELD_SEPARATOR)
+                .append(normalize(remark));
+        MessageDigest digest = ROW_DIGEST.get();
+        return HexFormat.of().formatHex(digest.digest(key.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim();
+    }
+
+    public static LocalDateTime parseTime(String time) {
+        long epochSecond = LedgerTime.parseEpochSecond(time);
+        return epochSecond == LedgerTime.INVALID ? null : LedgerTime.toLocalDateTime(epochSecond);
+    }
+
+    public static BigDecimal parseAmount(String amount) {
+        long cents = LedgerMoney.parseCents(amount);
+        return cents == LedgerMoney.INVALID ? null : LedgerMoney.toBigDecimal(cents);
+    }
+
     // Getters and Setters
     public Long getId() {
         return id;
@@ -102,6 +173,41 @@ public class CsvData {
         this.remark = remark;
     }
 
+    public LocalDateTime getOccurredAt() {
+        return occurredAt;
+    }
+
+    public void setOccurredAt(LocalDateTime occurredAt) {
+        this.occurredAt = occurredAt;
+    }
+
+    public BigDecimal getAmountValue() {
+        return amountValue;
+    }
+
+    public void setAmountValue(BigDecimal amountValue) {
+        this.amountValue = amountValue;
+        this.amountCents = LedgerMoney.INVALID;
+    }
+
+    /**
+     * @return 以分为单位的金额，无法解析时为 {@link LedgerMoney#INVALID}
+     */
+    public long getAmountCents() {
+        if (amountCents == LedgerMoney.INVALID && amountValue != null) {
+            amountCents = LedgerMoney.toCents(amountValue);
+        }
+        return amountCents;
+    }
+
+    public String getRowHash() {
+        return rowHash;
+    }
+
+    public void setRowHash(String rowHash) {
+        this.rowHash = rowHash;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,32 @@
+package com.example.csv;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 分页游标：上一页最后一行的 (纪元秒, id)。对外编码为 URL 安全的 Base64 字符串，前端原样回传即可。
+ */
+public record CsvDataCursor(long epochSecond, long id) {
+
+    public String encode() {
+        byte[] bytes = (epochSecond + ":" + id).getBytes(StandardCharsets.US_ASCII);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * @return 解码后的游标，参数为空时返回 null（表示第一页）
+     */
+    public static CsvDataCursor decodeOrNull(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.US_ASCII);
+            int separator = value.indexOf(':');
+            return new CsvDataCursor(Long.parseLong(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("分页游标无效: " + token);
+        }
+    }
+}
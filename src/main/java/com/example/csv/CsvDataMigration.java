@@ -0,0 +1,88 @@
+package com.example.csv;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 启动时为旧数据回填 occurred_at、amount_value 两个类型化列和 row_hash，并在汇总表为空时初始化汇总数据。
+ * <p>
+ * 新列、索引和汇总表由 Hibernate 的 ddl-auto=update 创建；这里按主键分批读取 row_hash 为空的行，
+ * 解析原有的字符串字段后批量更新。已回填的行不会再被扫描，重复执行是安全的。
+ */
+@Component
+public class CsvDataMigration implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(CsvDataMigration.class);
+
+    private static final int BATCH_SIZE = 5000;
+
+    private static final String SELECT_SQL = "SELECT id, time, amount, account, category, remark FROM " +
+            CsvBulkLoader.TABLE + " WHERE row_hash IS NULL AND id > ? ORDER BY id LIMIT ?";
+    private static final String UPDATE_SQL = "UPDATE " + CsvBulkLoader.TABLE +
+            " SET occurred_at = ?, amount_value = ?, row_hash = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CsvBulkLoader csvBulkLoader;
+
+    public CsvDataMigration(JdbcTemplate jdbcTemplate, CsvBulkLoader csvBulkLoader) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.csvBulkLoader = csvBulkLoader;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        backfillTypedColumns();
+
+        if (isEmpty(CsvBulkLoader.DAILY_ROLLUP_TABLE) && !isEmpty(CsvBulkLoader.TABLE)) {
+            csvBulkLoader.rebuildRollups();
+            logger.info("Rebuilt csv rollup tables from {}", CsvBulkLoader.TABLE);
+        }
+    }
+
+    private boolean isEmpty(String table) {
+        return jdbcTemplate.queryForList("SELECT 1 FROM " + table + " LIMIT 1").isEmpty();
+    }
+
+    private void backfillTypedColumns() {
+        long lastId = 0;
+        long migrated = 0;
+
+        while (true) {
+            List<Object[]> updates = new ArrayList<>(BATCH_SIZE);
+            List<Long> ids = jdbcTemplate.query(SELECT_SQL, (rs, rowNum) -> {
+                long id = rs.getLong(1);
+                String time = rs.getString(2);
+                String amount = rs.getString(3);
+                LocalDateTime occurredAt = CsvData.parseTime(time);
+                long amountCents = LedgerMoney.parseCents(amount);
+                String rowHash = CsvData.computeRowHash(time, occurredAt, amount, amountCents,
+                        rs.getString(4), rs.getString(5), rs.getString(6));
+                updates.add(new Object[]{
+                        occurredAt != null ? Timestamp.valueOf(occurredAt) : null,
+                        amountCents != LedgerMoney.INVALID ? LedgerMoney.toBigDecimal(amountCents) : null,
+                        rowHash, id});
+                return id;
+            }, lastId, BATCH_SIZE);
+
+            if (ids.isEmpty()) {
+                break;
+            }
+            jdbcTemplate.batchUpdate(UPDATE_SQL, updates);
+            migrated += updates.size();
+            lastId = ids.get(ids.size() - 1);
+        }
+
+        if (migrated > 0) {
+            logger.info("Backfilled occurred_at/amount_value/row_hash for {} csv_data rows", migrated);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.csv;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按 (时间, id) 排序的一页明细数据。nextCursor 为空表示已经是最后一页。
+ */
+public class CsvDataPage {
+    private final List<Map<String, String>> rows;
+    private final String nextCursor;
+
+    public CsvDataPage(List<Map<String, String>> rows, String nextCursor) {
+        this.rows = rows;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Map<String, String>> getRows() {
+        return rows;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
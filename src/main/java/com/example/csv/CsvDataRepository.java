@@ -1,10 +1,23 @@
 package com.example.csv;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface CsvDataRepository extends JpaRepository<CsvData, Long> {
-    List<CsvData> findAllByOrderByCreatedAtDesc();
+
+    // 时间范围为左闭右开 [start, end)，由 idx_csv_data_category_occurred_at 覆盖，结果按支出金额从高到低排序
+    @Query("SELECT c.category AS category, SUM(-c.amountValue) AS amount, COUNT(c) AS count " +
+            "FROM CsvData c " +
+            "WHERE c.amountValue < 0 AND c.category IS NOT NULL " +
+            "AND c.occurredAt >= :start AND c.occurredAt < :end " +
+            "GROUP BY c.category " +
+            "ORDER BY SUM(-c.amountValue) DESC")
+    List<CategoryAmountSummary> sumExpenseByCategory(@Param("start") LocalDateTime start,
+                                                     @Param("end") LocalDateTime end);
 }
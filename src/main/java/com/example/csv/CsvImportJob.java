@@ -0,0 +1,124 @@
+package com.example.csv;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次后台导入任务的状态和进度。计数由导入线程更新，查询接口可以随时并发读取。
+ */
+public class CsvImportJob {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private final String jobId;
+    private final String fileName;
+    private final CsvImportMode mode;
+    private final long fileSize;
+    private final long submittedAt = System.currentTimeMillis();
+
+    private final AtomicLong rowsParsed = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String error;
+    private volatile CsvImportResult result;
+
+    public CsvImportJob(String jobId, String fileName, CsvImportMode mode, long fileSize) {
+        this.jobId = jobId;
+        this.fileName = fileName;
+        this.mode = mode;
+        this.fileSize = fileSize;
+    }
+
+    void rowParsed() {
+        rowsParsed.incrementAndGet();
+    }
+
+    void rowWritten() {
+        rowsWritten.incrementAndGet();
+    }
+
+    void markRunning() {
+        startedAt = System.currentTimeMillis();
+        status = Status.RUNNING;
+    }
+
+    void markSucceeded(CsvImportResult result) {
+        this.result = result;
+        finishedAt = System.currentTimeMillis();
+        status = Status.SUCCEEDED;
+    }
+
+    void markFailed(String error) {
+        this.error = error;
+        finishedAt = System.currentTimeMillis();
+        status = Status.FAILED;
+    }
+
+    boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public CsvImportMode getMode() {
+        return mode;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public long getRowsParsed() {
+        return rowsParsed.get();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    /**
+     * @return 开始执行到结束（未结束时到当前）的毫秒数，排队中为 0
+     */
+    public long getElapsedMillis() {
+        long start = startedAt;
+        if (start == 0) {
+            return 0;
+        }
+        long end = finishedAt;
+        return (end != 0 ? end : System.currentTimeMillis()) - start;
+    }
+
+    /**
+     * @return 每秒解析的行数
+     */
+    public long getRowsPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0 : getRowsParsed() * 1000 / elapsed;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public CsvImportResult getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.csv;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 后台执行CSV导入，上传请求保存文件后立即返回任务 id，不再占用 Tomcat 请求线程。
+ * <p>
+ * 导入在独立的有界线程池中执行：同时执行的任务数和排队数都有上限，超出时拒绝新任务，
+ * 大量导入不会占满 Web 线程池或数据库连接池。导入本身持有导入锁，默认只允许一个任务同时执行。
+ */
+@Service
+public class CsvImportJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CsvImportJobService.class);
+
+    private final CsvService csvService;
+    private final ThreadPoolExecutor importExecutor;
+    private final int maxFinishedJobs;
+    private final Map<String, CsvImportJob> jobs = new ConcurrentHashMap<>();
+
+    public CsvImportJobService(CsvService csvService,
+                               @Value("${csv.import.max-concurrent-jobs:1}") int maxConcurrentJobs,
+                               @Value("${csv.import.max-queued-jobs:8}") int maxQueuedJobs,
+                               @Value("${csv.import.max-finished-jobs:100}") int maxFinishedJobs) {
+        this.csvService = csvService;
+        this.maxFinishedJobs = maxFinishedJobs;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.importExecutor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, maxQueuedJobs)),
+                runnable -> new Thread(runnable, "csv-import-" + threadCount.incrementAndGet()));
+    }
+
+    /**
+     * 把上传的文件转存到临时文件（请求结束后上传的文件会被容器删除），然后提交后台导入。
+     *
+     * @throws IllegalStateException 排队的任务已满
+     */
+    public CsvImportJob submit(MultipartFile file, CsvImportMode mode) throws IOException {
+        Path tempFile = Files.createTempFile("csv-import-", ".csv");
+        try {
+            // 上传内容已在磁盘上时容器直接移动文件，不需要复制
+            file.transferTo(tempFile.toFile());
+            CsvImportJob job = new CsvImportJob(UUID.randomUUID().toString(), file.getOriginalFilename(),
+                    mode, Files.size(tempFile));
+            jobs.put(job.getJobId(), job);
+            try {
+                importExecutor.execute(() -> run(job, tempFile));
+            } catch (RejectedExecutionException e) {
+                jobs.remove(job.getJobId());
+                throw new IllegalStateException("导入任务过多，请稍后再试");
+            }
+            removeExpiredJobs();
+            return job;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    /**
+     * @return 任务不存在或已被清理时返回 null
+     */
+    public CsvImportJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    private void run(CsvImportJob job, Path tempFile) {
+        job.markRunning();
+        try (InputStream inputStream = Files.newInputStream(tempFile)) {
+            job.markSucceeded(csvService.importCsv(inputStream, job.getFileSize(), job));
+            logger.info("Import job {} finished: {} rows parsed, {} rows written in {} ms",
+                    job.getJobId(), job.getRowsParsed(), job.getRowsWritten(), job.getElapsedMillis());
+        } catch (IllegalArgumentException e) {
+            job.markFailed("参数错误: " + e.getMessage());
+        } catch (Exception e) {
+            logger.warn("Import job {} failed", job.getJobId(), e);
+            job.markFailed("解析文件时出错: " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException e) {
+                logger.warn("Failed to delete {}", tempFile, e);
+            }
+        }
+    }
+
+    // 只保留最近的若干个已结束任务，供客户端查询最终结果
+    private void removeExpiredJobs() {
+        List<CsvImportJob> finished = jobs.values().stream()
+                .filter(CsvImportJob::isFinished)
+                .sorted(Comparator.comparingLong(CsvImportJob::getSubmittedAt))
+                .toList();
+        for (int i = 0; i < finished.size() - maxFinishedJobs; i++) {
+            jobs.remove(finished.get(i).getJobId());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        importExecutor.shutdownNow();
+    }
+}
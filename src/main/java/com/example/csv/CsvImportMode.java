@@ -0,0 +1,24 @@
+package com.example.csv;
+
+import java.util.Locale;
+
+/**
+ * CSV导入方式。
+ */
+public enum CsvImportMode {
+    // 用文件内容整体替换现有数据
+    REPLACE,
+    // 只追加库中不存在的行
+    APPEND;
+
+    public static CsvImportMode parse(String value) {
+        if (value == null || value.isBlank()) {
+            return REPLACE;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不支持的导入方式: " + value);
+        }
+    }
+}
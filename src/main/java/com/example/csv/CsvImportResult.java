@@ -0,0 +1,53 @@
+package com.example.csv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CSV导入结果：只返回行数统计和少量样例数据，不回传整个数据集。
+ */
+public class CsvImportResult {
+    private CsvImportMode mode = CsvImportMode.REPLACE;
+    private long rowCount;
+    private long skippedCount;
+    // 追加导入时因库中已有相同内容而跳过的行数
+    private long duplicateCount;
+    private final List<Map<String, String>> sample = new ArrayList<>();
+
+    public CsvImportMode getMode() {
+        return mode;
+    }
+
+    public void setMode(CsvImportMode mode) {
+        this.mode = mode;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public void setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    public void setSkippedCount(long skippedCount) {
+        this.skippedCount = skippedCount;
+    }
+
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    public void setDuplicateCount(long duplicateCount) {
+        this.duplicateCount = duplicateCount;
+    }
+
+    public List<Map<String, String>> getSample() {
+        return sample;
+    }
+}
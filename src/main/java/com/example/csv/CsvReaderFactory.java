@@ -0,0 +1,78 @@
+package com.example.csv;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 根据输入大小选择CSV读取方式：小文件在当前线程中解析，大文件交给 {@link ParallelCsvReader} 多线程解析。
+ * <p>
+ * 按文件头的魔数识别压缩格式：gzip 边读边解压后按普通CSV处理；ZIP 压缩包中的多个CSV文件依次解压，
+ * 各文件的数据块一起并行解析。压缩内容不会先写入磁盘。
+ */
+@Component
+public class CsvReaderFactory {
+
+    private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+    private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+    // 账单导出文件通常能压缩到 1/5 以下，按 4 倍估算解压后的大小
+    private static final int GZIP_SIZE_RATIO = 4;
+
+    private static final byte[] GZIP_MAGIC = {(byte) 0x1f, (byte) 0x8b};
+    private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+    // 不含任何文件的 ZIP 只有目录结束记录
+    private static final byte[] EMPTY_ZIP_MAGIC = {'P', 'K', 5, 6};
+
+    private final ForkJoinPool parsePool;
+    private final long parallelThreshold;
+    private final int maxPendingBlocks;
+
+    public CsvReaderFactory(@Value("${csv.import.parse-parallelism:0}") int parallelism,
+                            @Value("${csv.import.parallel-threshold-mb:16}") long parallelThresholdMb) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.parsePool = new ForkJoinPool(threads);
+        this.parallelThreshold = parallelThresholdMb * 1024 * 1024;
+        // 每个线程一个正在解析的数据块，再各预读一个，避免读取输入时线程空闲
+        this.maxPendingBlocks = threads * 2;
+    }
+
+    /**
+     * @param size 输入的字节数（压缩文件为压缩后的大小），未知时传 -1（按小文件处理）
+     */
+    public CsvRowSource open(InputStream inputStream, long size) throws IOException {
+        BufferedInputStream input = new BufferedInputStream(inputStream, INPUT_BUFFER_SIZE);
+        if (startsWith(input, GZIP_MAGIC)) {
+            return openCsv(new GZIPInputStream(input, INPUT_BUFFER_SIZE), size < 0 ? size : size * GZIP_SIZE_RATIO);
+        }
+        if (startsWith(input, ZIP_MAGIC) || startsWith(input, EMPTY_ZIP_MAGIC)) {
+            return new ParallelCsvReader(new ZipCsvInputs(input), parsePool, BLOCK_SIZE, maxPendingBlocks);
+        }
+        return openCsv(input, size);
+    }
+
+    private CsvRowSource openCsv(InputStream inputStream, long size) throws IOException {
+        if (size >= parallelThreshold && parsePool.getParallelism() > 1) {
+            return new ParallelCsvReader(inputStream, parsePool, BLOCK_SIZE, maxPendingBlocks);
+        }
+        return new CsvRecordReader(inputStream);
+    }
+
+    private static boolean startsWith(BufferedInputStream input, byte[] magic) throws IOException {
+        input.mark(magic.length);
+        byte[] head = input.readNBytes(magic.length);
+        input.reset();
+        return Arrays.equals(head, magic);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        parsePool.shutdownNow();
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 在当前线程中逐条读取CSV输入流并直接映射为 {@link CsvData}，不在内存中保留已读取的记录。
+ * 分词由 {@link CsvTokenizer} 完成，支持引号内的逗号、换行和转义引号。
+ */
+public class CsvRecordReader implements CsvRowSource {
+
+    private final Reader reader;
+    private final CsvTokenizer tokenizer;
+    private final CsvColumns columns;
+
+    private long skippedCount;
+
+    public CsvRecordReader(InputStream inputStream) throws IOException {
+        this.reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+        this.tokenizer = new CsvTokenizer(reader);
+        if (!tokenizer.nextRecord()) {
+            throw new IllegalArgumentException("CSV文件为空");
+        }
+        this.columns = new CsvColumns(tokenizer);
+    }
+
+    /**
+     * 读取下一条记录，空行会被跳过。
+     */
+    @Override
+    public CsvData next() throws IOException {
+        while (tokenizer.nextRecord()) {
+            if (tokenizer.isBlankRecord()) {
+                skippedCount++;
+                continue;
+            }
+            return columns.toCsvData(tokenizer);
+        }
+        return null;
+    }
+
+    @Override
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.csv;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 统计接口的结果缓存，键为 (接口, 请求参数, 数据集版本号)，按最近最少使用淘汰。
+ * <p>
+ * 导入成功后 {@link LedgerStore} 的版本号递增，旧版本的条目不会再被命中，随后被逐步淘汰。
+ * 计算期间如果版本号发生变化，结果不写入缓存，并按新版本重新计算，因此缓存和返回的结果都对应调用结束时的当前版本。
+ * 同时读取快照和数据库的 loader 需要通过 {@link LedgerStore#read} 读取，保证一次计算内只看到一个版本。
+ */
+@Component
+public class CsvResultCache {
+
+    // 计算期间版本号连续变化时最多重算的次数，之后直接返回最后一次的结果
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final LedgerStore ledgerStore;
+    private final int maxEntries;
+
+    private final Map<Key, Object> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CsvResultCache(LedgerStore ledgerStore,
+                          @Value("${csv.cache.max-entries:256}") int maxEntries) {
+        this.ledgerStore = ledgerStore;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                if (size() > CsvResultCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 返回当前数据集版本下的缓存结果，未命中时调用 loader 计算。loader 抛出的异常直接传给调用方，不会被缓存。
+     * 计算期间有导入发布了新版本时丢弃结果，按新版本重新查找或计算。
+     *
+     * @param params 影响结果的请求参数，可以为 null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String endpoint, Supplier<T> loader, String... params) {
+        List<String> paramList = Arrays.asList(params);
+        T result = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            long version = ledgerStore.version();
+            Key key = new Key(endpoint, paramList, version);
+
+            synchronized (entries) {
+                Object cached = entries.get(key);
+                if (cached != null) {
+                    hits.incrementAndGet();
+                    return (T) cached;
+                }
+            }
+
+            // 计算放在锁外，不同键的请求互不阻塞；同一个键并发未命中时可能重复计算，结果相同
+            misses.incrementAndGet();
+            result = loader.get();
+            if (ledgerStore.version() == version) {
+                if (result != null) {
+                    synchronized (entries) {
+                        entries.put(key, result);
+                    }
+                }
+                return result;
+            }
+        }
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long requests = hitCount + missCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (entries) {
+            stats.put("size", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", requests == 0 ? 0.0 : (double) hitCount / requests);
+        stats.put("evictions", evictions.get());
+        stats.put("datasetVersion", ledgerStore.version());
+        return stats;
+    }
+
+    private record Key(String endpoint, List<String> params, long version) {
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 按文件顺序逐条提供CSV记录。
+ */
+public interface CsvRowSource extends Closeable {
+
+    /**
+     * @return 下一条记录，读到文件末尾时返回 null
+     */
+    CsvData next() throws IOException;
+
+    /**
+     * @return 已跳过的空行数
+     */
+    long getSkippedCount();
+}
@@ -1,283 +1,470 @@
 package com.example.csv;
 
-import com.example.dto.CsvResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.math.BigDecimal;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 public class CsvService {
 
-    private static final Map<String, String> KEY_MAPPING = new HashMap<>();
-    private final CsvDataRepository csvDataRepository;
+    // 导入结果中返回的样例行数
+    private static final int SAMPLE_SIZE = 20;
 
-    static {
-        KEY_MAPPING.put("\uFEFF分类", "category");
-        KEY_MAPPING.put("时间", "time");
-        KEY_MAPPING.put("金额", "amount");
-        KEY_MAPPING.put("账户", "account");
-        KEY_MAPPING.put("账本", "book");
-        KEY_MAPPING.put("货币", "currency");
-        KEY_MAPPING.put("备注", "remark");
-    }
+    // 明细分页的默认和最大页大小
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int TOP_REMARKS = 5;
+
+    // 未指定日期范围时使用的边界，覆盖 MySQL DATE/DATETIME 的取值范围
+    private static final LocalDate MIN_DATE = LocalDate.of(1000, 1, 1);
+    private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 30);
+
+    private final CsvDataRepository csvDataRepository;
+    private final DailyRollupRepository dailyRollupRepository;
+    private final CategoryRollupRepository categoryRollupRepository;
+    private final MonthlyCategoryRollupRepository monthlyCategoryRollupRepository;
+    private final CsvBulkLoader csvBulkLoader;
+    private final CsvReaderFactory csvReaderFactory;
+    private final LedgerStore ledgerStore;
 
     @Autowired
-    public CsvService(CsvDataRepository csvDataRepository) {
+    public CsvService(CsvDataRepository csvDataRepository,
+                      DailyRollupRepository dailyRollupRepository,
+                      CategoryRollupRepository categoryRollupRepository,
+                      MonthlyCategoryRollupRepository monthlyCategoryRollupRepository,
+                      CsvBulkLoader csvBulkLoader,
+                      CsvReaderFactory csvReaderFactory,
+                      LedgerStore ledgerStore) {
         this.csvDataRepository = csvDataRepository;
+        this.dailyRollupRepository = dailyRollupRepository;
+        this.categoryRollupRepository = categoryRollupRepository;
+        this.monthlyCategoryRollupRepository = monthlyCategoryRollupRepository;
+        this.csvBulkLoader = csvBulkLoader;
+        this.csvReaderFactory = csvReaderFactory;
+        this.ledgerStore = ledgerStore;
     }
 
-    public List<Map<String, String>> parseCsvFile(MultipartFile file) throws Exception {
-        List<Map<String, String>> records = new ArrayList<>();
-
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
+    /**
+     * 流式解析上传的CSV文件并写入数据库，整个过程只在内存中保留有限的几个批次；大文件多线程解析。
+     */
+    public CsvImportResult importCsvFile(MultipartFile file, CsvImportMode mode) throws Exception {
+        return importCsv(file.getInputStream(), file.getSize(), mode);
+    }
 
-            String headerLine = reader.readLine();
-            if (headerLine == null) {
-                throw new IllegalArgumentException("CSV文件为空");
-            }
+    /**
+     * @param size 输入的字节数，未知时传 -1
+     */
+    public CsvImportResult importCsv(InputStream inputStream, long size, CsvImportMode mode) throws Exception {
+        return importCsv(inputStream, size, new CsvImportJob(null, null, mode, size));
+    }
 
-            List<String> headers = parseLine(headerLine);
-            List<String> englishHeaders = new ArrayList<>();
+    /**
+     * 导入过程中更新 job 的解析行数和写入行数，供后台任务查询进度。
+     */
+    public CsvImportResult importCsv(InputStream inputStream, long size, CsvImportJob job) throws Exception {
+        try (CsvRowSource reader = csvReaderFactory.open(inputStream, size)) {
+            return job.getMode() == CsvImportMode.APPEND
+                    ? appendOriginDataToDatabase(reader, job) : saveOriginDataToDatabase(reader, job);
+        }
+    }
 
-            for (String header : headers) {
-                englishHeaders.add(KEY_MAPPING.getOrDefault(header.trim(), header.trim()));
-            }
+    /**
+     * 全量替换 csv_data：数据先批量写入临时表，全部写完后再原子切换为正式表。
+     * 同一遍读取中构建新的列式快照，切换成功后立即发布。
+     */
+    public CsvImportResult saveOriginDataToDatabase(CsvRowSource reader, CsvImportJob job)
+            throws IOException, SQLException {
+        LedgerSnapshot.Builder snapshotBuilder = new LedgerSnapshot.Builder();
+        try (CsvBulkLoader.Load load = csvBulkLoader.beginReload(writtenRowListener(snapshotBuilder, job))) {
+            return importRows(reader, load, snapshotBuilder, job);
+        }
+    }
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                List<String> values = parseLine(line);
-                Map<String, String> record = new LinkedHashMap<>();
+    /**
+     * 追加导入：跳过库中已有的行（按行内容哈希判断），只写入新行并累加汇总表。
+     * 新快照由当前快照加上新写入的行构成，提交成功后发布。
+     */
+    public CsvImportResult appendOriginDataToDatabase(CsvRowSource reader, CsvImportJob job)
+            throws IOException, SQLException {
+        LedgerSnapshot.Builder snapshotBuilder = new LedgerSnapshot.Builder();
+        try (CsvBulkLoader.Load load = csvBulkLoader.beginAppend(writtenRowListener(snapshotBuilder, job))) {
+            // 导入锁已持有，当前快照不会再被其他导入替换
+            snapshotBuilder.addAll(ledgerStore.current());
+            return importRows(reader, load, snapshotBuilder, job);
+        }
+    }
 
-                for (int i = 0; i < Math.min(englishHeaders.size(), values.size()); i++) {
-                    record.put(englishHeaders.get(i), values.get(i));
-                }
+    private static Consumer<CsvData> writtenRowListener(LedgerSnapshot.Builder snapshotBuilder, CsvImportJob job) {
+        return csvData -> {
+            snapshotBuilder.add(csvData);
+            job.rowWritten();
+        };
+    }
 
-                records.add(record);
+    private CsvImportResult importRows(CsvRowSource reader, CsvBulkLoader.Load load,
+                                       LedgerSnapshot.Builder snapshotBuilder, CsvImportJob job)
+            throws IOException, SQLException {
+        CsvImportResult result = new CsvImportResult();
+        result.setMode(job.getMode());
+
+        CsvData csvData;
+        while ((csvData = reader.next()) != null) {
+            job.rowParsed();
+            if (result.getSample().size() < SAMPLE_SIZE) {
+                result.getSample().add(toRecord(csvData));
             }
+            load.add(csvData);
         }
+        load.prepareCommit();
+        // 数据库中的新数据可见与快照、版本号更新一步完成，汇总表查询不会先于快照看到新数据
+        ledgerStore.publish(snapshotBuilder.build(), load::commit);
 
-        return records;
+        result.setRowCount(load.getRowCount());
+        result.setDuplicateCount(load.getDuplicateCount());
+        result.setSkippedCount(reader.getSkippedCount());
+        return result;
     }
 
-    private List<String> parseLine(String line) {
-        List<String> fields = new ArrayList<>();
-        StringBuilder currentField = new StringBuilder();
-        boolean inQuotes = false;
-
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-
-            if (c == '"') {
-                inQuotes = !inQuotes;
-            } else if (c == ',' && !inQuotes) {
-                fields.add(currentField.toString().trim());
-                currentField = new StringBuilder();
-            } else {
-                currentField.append(c);
-            }
-        }
+    public LedgerSnapshot getSnapshot() {
+        return ledgerStore.current();
+    }
 
-        fields.add(currentField.toString().trim());
-        return fields;
+    /**
+     * 同时读取快照和数据库汇总表时使用：query 收到的快照与其中查询到的汇总表属于同一个数据集版本。
+     */
+    public <T> T readConsistent(Function<LedgerSnapshot, T> query) {
+        return ledgerStore.read(query);
     }
 
-    public List<Map<String, String>> filterDataByDateRange(List<Map<String, String>> data,
-                                                           String startDateStr, String endDateStr) {
-        if ((startDateStr == null || startDateStr.isEmpty()) &&
-                (endDateStr == null || endDateStr.isEmpty())) {
-            return data;
-        }
+    /**
+     * 按 yyyy-MM-dd 格式的起止日期（均包含）筛选快照中的行，参数为空表示不限制。
+     */
+    public LedgerSnapshot.Range filterDataByDateRange(LedgerSnapshot snapshot, String startDateStr, String endDateStr) {
+        return snapshot.range(LedgerTime.parseEpochDayOrNull(startDateStr), LedgerTime.parseEpochDayOrNull(endDateStr));
+    }
 
-        List<Map<String, String>> filteredData = new ArrayList<>();
+    /**
+     * 按天汇总收支，直接读取每日汇总表，耗时只与日期范围内的天数有关。
+     */
+    public List<Map<String, String>> aggregateDataByDate(String startDate, String endDate) {
+        List<Map<String, String>> result = new ArrayList<>();
 
-        for (Map<String, String> record : data) {
-            String timeStr = record.get("time");
-            if (timeStr == null || timeStr.isEmpty()) {
-                continue;
-            }
+        List<DailyRollup> rollups = ledgerStore.readDatabase(() ->
+                dailyRollupRepository.findByStatDateBetweenOrderByStatDate(
+                        startDateOrMin(startDate), endDateOrMax(endDate)));
+        for (DailyRollup summary : rollups) {
+            Map<String, String> aggregatedRecord = new LinkedHashMap<>();
+            aggregatedRecord.put("time", summary.getStatDate().toString());
+            aggregatedRecord.put("income", summary.getIncome().setScale(2, RoundingMode.HALF_UP).toPlainString());
+            aggregatedRecord.put("expense", summary.getExpense().setScale(2, RoundingMode.HALF_UP).toPlainString());
 
-            String recordDateStr = timeStr.length() >= 10 ? timeStr.substring(0, 10) : timeStr;
-            boolean afterStart = startDateStr == null || startDateStr.isEmpty() ||
-                    recordDateStr.compareTo(startDateStr) >= 0;
-            boolean beforeEnd = endDateStr == null || endDateStr.isEmpty() ||
-                    recordDateStr.compareTo(endDateStr) <= 0;
+            // 设置其他字段为空
+            Arrays.asList("category", "account", "book", "currency", "remark")
+                    .forEach(field -> aggregatedRecord.put(field, ""));
 
-            if (afterStart && beforeEnd) {
-                filteredData.add(record);
-            }
+            result.add(aggregatedRecord);
         }
 
-        return filteredData;
+        return result;
     }
 
-    public List<Map<String, String>> aggregateDataByDate(List<Map<String, String>> data) {
-        Map<String, Map<String, Double>> aggregatedMap = new LinkedHashMap<>();
-
-        for (Map<String, String> record : data) {
-            String date = record.get("time");
-            String amountStr = record.get("amount");
-
-            if (date == null || amountStr == null) {
-                continue;
+    /**
+     * 日期范围内的收支合计和分类支出，基于快照的按天前缀和计算，耗时与范围内的行数和天数无关。
+     */
+    public Map<String, Object> getRangeSummary(LedgerSnapshot snapshot, String startDate, String endDate) {
+        LedgerDailyTotals totals = snapshot.dailyTotals();
+        LedgerDailyTotals.Window window = totals.window(
+                LedgerTime.parseEpochDayOrNull(startDate), LedgerTime.parseEpochDayOrNull(endDate));
+
+        List<Map<String, Object>> categories = new ArrayList<>();
+        List<Integer> categoryIds = new ArrayList<>();
+        for (int categoryId = 0; categoryId < snapshot.categoryCount(); categoryId++) {
+            if (totals.categoryExpenseCount(categoryId, window) > 0) {
+                categoryIds.add(categoryId);
             }
+        }
+        categoryIds.sort((a, b) -> Long.compare(
+                totals.categoryExpense(b, window), totals.categoryExpense(a, window)));
+        for (int categoryId : categoryIds) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("category", snapshot.category(categoryId));
+            item.put("amount", formatCents(totals.categoryExpense(categoryId, window)));
+            item.put("count", totals.categoryExpenseCount(categoryId, window));
+            categories.add(item);
+        }
 
-            try {
-                String dateStr = date.length() >= 10 ? date.substring(0, 10) : date;
-                double amount = Double.parseDouble(amountStr);
-
-                aggregatedMap.putIfAbsent(dateStr, new HashMap<>());
-                Map<String, Double> dailyStats = aggregatedMap.get(dateStr);
+        long income = totals.income(window);
+        long expense = totals.expense(window);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("startDate", startDate);
+        summary.put("endDate", endDate);
+        summary.put("income", formatCents(income));
+        summary.put("expense", formatCents(expense));
+        summary.put("balance", formatCents(income + expense));
+        summary.put("count", totals.count(window));
+        summary.put("categories", categories);
+        return summary;
+    }
 
-                if (amount >= 0) {
-                    dailyStats.put("income", dailyStats.getOrDefault("income", 0.0) + amount);
-                } else {
-                    dailyStats.put("expense", dailyStats.getOrDefault("expense", 0.0) + amount);
-                }
-            } catch (NumberFormatException e) {
-                continue;
+    /**
+     * 按时间粒度（可选再按分类、账户或账本）汇总日期范围内的金额，返回每组的合计、笔数、最小值和最大值。
+     */
+    public List<Map<String, Object>> aggregate(LedgerSnapshot snapshot, String startDate, String endDate,
+                                               String granularity, String pivot) {
+        TimeGranularity timeGranularity = TimeGranularity.parse(granularity);
+        PivotDimension pivotDimension = PivotDimension.parseOrNull(pivot);
+        LedgerSnapshot.Range range = filterDataByDateRange(snapshot, startDate, endDate);
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (LedgerAggregator.Bucket bucket : LedgerAggregator.aggregate(snapshot, range, timeGranularity, pivotDimension)) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("bucket", bucket.label());
+            item.put("startDate", LedgerTime.formatDate(bucket.startDay()));
+            if (pivotDimension != null) {
+                item.put(pivotDimension.fieldName(), pivotDimension.value(snapshot, bucket.pivotId()));
             }
+            item.put("sum", formatCents(bucket.sum()));
+            item.put("count", bucket.count());
+            item.put("min", formatCents(bucket.min()));
+            item.put("max", formatCents(bucket.max()));
+            result.add(item);
         }
+        return result;
+    }
 
-        List<Map<String, String>> result = new ArrayList<>();
-        for (Map.Entry<String, Map<String, Double>> entry : aggregatedMap.entrySet()) {
-            Map<String, String> aggregatedRecord = new LinkedHashMap<>();
-            aggregatedRecord.put("time", entry.getKey());
+    /**
+     * 按 (时间, id) 顺序返回区间内游标之后的一页明细，定位游标只需在快照上做一次二分查找，与页码无关。
+     */
+    public CsvDataPage getOriginDataPage(LedgerSnapshot snapshot, LedgerSnapshot.Range range,
+                                        String cursor, Integer pageSize) {
+        int limit = pageLimit(pageSize);
 
-            Map<String, Double> dailyStats = entry.getValue();
-            aggregatedRecord.put("income", formatDouble(dailyStats.getOrDefault("income", 0.0)));
-            aggregatedRecord.put("expense", formatDouble(dailyStats.getOrDefault("expense", 0.0)));
+        CsvDataCursor after = CsvDataCursor.decodeOrNull(cursor);
+        int from = after != null ? snapshot.seekAfter(range, after.epochSecond(), after.id()) : range.from();
+        int to = Math.min(range.to(), from + limit);
 
-            // 设置其他字段为空
-            Arrays.asList("category", "account", "book", "currency", "remark")
-                    .forEach(field -> aggregatedRecord.put(field, ""));
+        List<Map<String, String>> rows = new ArrayList<>(to - from);
+        for (int row = from; row < to; row++) {
+            rows.add(toRecord(snapshot, row));
+        }
 
-            result.add(aggregatedRecord);
+        String nextCursor = null;
+        if (to < range.to()) {
+            nextCursor = new CsvDataCursor(snapshot.epochSecond(to - 1), snapshot.id(to - 1)).encode();
         }
+        return new CsvDataPage(rows, nextCursor);
+    }
 
+    /**
+     * 在区间内搜索备注或分类包含关键词的明细，多个关键词用空格分隔、需要同时包含。
+     * 中文按子串匹配，英文和数字按整词匹配（不区分大小写）。结果按 (时间, id) 顺序分页，游标与 {@link #getOriginDataPage} 相同。
+     */
+    public Map<String, Object> search(LedgerSnapshot snapshot, LedgerSnapshot.Range range, String query,
+                                      String cursor, Integer pageSize) {
+        int limit = pageLimit(pageSize);
+        CsvDataCursor after = CsvDataCursor.decodeOrNull(cursor);
+        int from = after != null ? snapshot.seekAfter(range, after.epochSecond(), after.id()) : range.from();
+
+        LedgerSearchIndex.Matches matches = snapshot.searchIndex().search(snapshot, query, range, from, limit);
+        int[] matchedRows = matches.rows();
+        List<Map<String, String>> rows = new ArrayList<>(matchedRows.length);
+        for (int row : matchedRows) {
+            rows.add(toRecord(snapshot, row));
+        }
+        String nextCursor = null;
+        if (matches.hasMore()) {
+            int last = matchedRows[matchedRows.length - 1];
+            nextCursor = new CsvDataCursor(snapshot.epochSecond(last), snapshot.id(last)).encode();
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("query", query);
+        result.put("total", matches.total());
+        result.put("rows", rows);
+        result.put("nextCursor", nextCursor);
         return result;
     }
 
-    private String formatDouble(double value) {
-        return new BigDecimal(value).setScale(2, BigDecimal.ROUND_HALF_UP).toString();
+    private static int pageLimit(Integer pageSize) {
+        int limit = pageSize != null ? pageSize : DEFAULT_PAGE_SIZE;
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("pageSize 必须在 1 到 " + MAX_PAGE_SIZE + " 之间");
+        }
+        return limit;
     }
 
-    public void saveOriginDataToDatabase(List<Map<String, String>> data) {
-        List<CsvData> csvDataList = new ArrayList<>();
-
-        for (Map<String, String> record : data) {
-            CsvData csvData = new CsvData(
-                    record.get("category"),
-                    record.get("time"),
-                    record.get("amount"),
-                    record.get("account"),
-                    record.get("book"),
-                    record.get("currency"),
-                    record.get("remark")
-            );
-            csvDataList.add(csvData);
+    /**
+     * 按 (时间, id) 顺序把区间内的全部明细逐个写为 JSON 对象，字段与 {@link #getOriginDataPage} 返回的一致。
+     * 直接从快照的列读取，不为每行创建 Map，用于流式输出。
+     */
+    public void writeOriginRecords(LedgerSnapshot snapshot, LedgerSnapshot.Range range, JsonGenerator generator)
+            throws IOException {
+        char[] amountBuffer = new char[LedgerMoney.MAX_FORMATTED_LENGTH];
+        for (int row = range.from(); row < range.to(); row++) {
+            generator.writeStartObject();
+            generator.writeStringField("category", snapshot.category(snapshot.categoryId(row)));
+            if (snapshot.isValid(row)) {
+                generator.writeStringField("time", LedgerTime.formatDateTime(snapshot.epochSecond(row)));
+                generator.writeFieldName("amount");
+                generator.writeString(amountBuffer, 0, LedgerMoney.formatCents(snapshot.amount(row), amountBuffer));
+            } else {
+                generator.writeStringField("time", snapshot.timeText(row));
+                generator.writeStringField("amount", snapshot.amountText(row));
+            }
+            generator.writeStringField("account", snapshot.account(snapshot.accountId(row)));
+            generator.writeStringField("book", snapshot.book(snapshot.bookId(row)));
+            generator.writeStringField("currency", snapshot.currency(snapshot.currencyId(row)));
+            generator.writeStringField("remark", snapshot.remark(row));
+            generator.writeEndObject();
         }
+    }
 
-        csvDataRepository.deleteAll();
-        csvDataRepository.saveAll(csvDataList);
+    private Map<String, String> toRecord(LedgerSnapshot snapshot, int row) {
+        Map<String, String> record = new LinkedHashMap<>();
+        record.put("category", snapshot.category(snapshot.categoryId(row)));
+        record.put("time", snapshot.timeText(row));
+        record.put("amount", snapshot.amountText(row));
+        record.put("account", snapshot.account(snapshot.accountId(row)));
+        record.put("book", snapshot.book(snapshot.bookId(row)));
+        record.put("currency", snapshot.currency(snapshot.currencyId(row)));
+        record.put("remark", snapshot.remark(row));
+        return record;
     }
 
-    public List<Map<String, String>> getOriginDataFromDatabase() {
-        List<CsvData> csvDataList = csvDataRepository.findAllByOrderByCreatedAtDesc();
-        List<Map<String, String>> result = new ArrayList<>();
+    private Map<String, String> toRecord(CsvData csvData) {
+        Map<String, String> record = new LinkedHashMap<>();
+        record.put("category", csvData.getCategory());
+        record.put("time", csvData.getTime());
+        record.put("amount", csvData.getAmount());
+        record.put("account", csvData.getAccount());
+        record.put("book", csvData.getBook());
+        record.put("currency", csvData.getCurrency());
+        record.put("remark", csvData.getRemark());
+        return record;
+    }
+
+    /**
+     * @return 分类到支出金额（单位为分）
+     */
+    public Map<String, Long> getExpenseCategoryAmount(String startDate, String endDate) {
+        Map<String, Long> categoryExpenseMap = new LinkedHashMap<>();
 
-        for (CsvData csvData : csvDataList) {
-            Map<String, String> record = new LinkedHashMap<>();
-            record.put("category", csvData.getCategory());
-            record.put("time", csvData.getTime());
-            record.put("amount", csvData.getAmount());
-            record.put("account", csvData.getAccount());
-            record.put("book", csvData.getBook());
-            record.put("currency", csvData.getCurrency());
-            record.put("remark", csvData.getRemark());
-            result.add(record);
+        for (CategoryAmountSummary summary : sumExpenseByCategory(startDate, endDate)) {
+            categoryExpenseMap.put(summary.getCategory(), LedgerMoney.toCents(summary.getAmount()));
         }
 
-        return result;
+        return categoryExpenseMap;
     }
 
-    public Map<String, Double> getExpenseCategoryAmount() {
-        List<Map<String, String>> originData = getOriginDataFromDatabase();
-        Map<String, Double> categoryExpenseMap = new HashMap<>();
-
-        for (Map<String, String> record : originData) {
-            String category = record.get("category");
-            String amountStr = record.get("amount");
+    /**
+     * @param withStats 为 true 时每个分类再附上单笔支出的中位数、p90、p99 和最常见的备注，
+     *                  由快照中按月预先计算的摘要合并得到，不重新扫描明细
+     */
+    public List<Map<String, Object>> getExpenseCategoryRanking(String startDate, String endDate, boolean withStats) {
+        // 摘要来自快照、金额来自汇总表，在同一个读锁区间内读取
+        return ledgerStore.read(snapshot -> expenseCategoryRanking(snapshot, startDate, endDate, withStats));
+    }
 
-            if (category == null || amountStr == null) {
-                continue;
-            }
+    private List<Map<String, Object>> expenseCategoryRanking(LedgerSnapshot snapshot, String startDate, String endDate,
+                                                             boolean withStats) {
+        List<Map<String, Object>> rankingList = new ArrayList<>();
+        Map<String, CategoryExpenseSketches.Sketch> sketches =
+                withStats ? expenseSketches(snapshot, startDate, endDate) : Map.of();
 
-            try {
-                double amount = Double.parseDouble(amountStr);
-                if (amount < 0) {
-                    double absAmount = Math.abs(amount);
-                    categoryExpenseMap.put(category,
-                            categoryExpenseMap.getOrDefault(category, 0.0) + absAmount);
-                }
-            } catch (NumberFormatException e) {
-                continue;
+        // 结果已按金额从高到低排序
+        for (CategoryAmountSummary summary : sumExpenseByCategory(startDate, endDate)) {
+            Map<String, Object> rankingItem = new LinkedHashMap<>();
+            rankingItem.put("category", summary.getCategory());
+            rankingItem.put("amount", summary.getAmount().setScale(2, RoundingMode.HALF_UP));
+            rankingItem.put("count", summary.getCount().intValue());
+            if (withStats) {
+                putExpenseStats(rankingItem, sketches.get(summary.getCategory()));
             }
+            rankingList.add(rankingItem);
         }
 
-        Map<String, Double> formattedMap = new LinkedHashMap<>();
-        categoryExpenseMap.forEach((k, v) ->
-                formattedMap.put(k, new BigDecimal(v).setScale(2, BigDecimal.ROUND_HALF_UP).doubleValue()));
-
-        return formattedMap;
+        return rankingList;
     }
 
-    public List<Map<String, Object>> getExpenseCategoryRanking() {
-        List<Map<String, String>> originData = getOriginDataFromDatabase();
-        Map<String, Map<String, Object>> categoryStatsMap = new HashMap<>();
-
-        for (Map<String, String> record : originData) {
-            String category = record.get("category");
-            String amountStr = record.get("amount");
-
-            if (category == null || amountStr == null) {
-                continue;
+    private Map<String, CategoryExpenseSketches.Sketch> expenseSketches(LedgerSnapshot snapshot,
+                                                                        String startDate, String endDate) {
+        CategoryExpenseSketches.Sketch[] byCategoryId = snapshot.expenseSketches().forRange(snapshot,
+                LedgerTime.parseEpochDayOrNull(startDate), LedgerTime.parseEpochDayOrNull(endDate));
+        Map<String, CategoryExpenseSketches.Sketch> sketches = new HashMap<>();
+        for (int categoryId = 0; categoryId < byCategoryId.length; categoryId++) {
+            if (byCategoryId[categoryId] != null) {
+                sketches.put(snapshot.category(categoryId), byCategoryId[categoryId]);
             }
+        }
+        return sketches;
+    }
+
+    private void putExpenseStats(Map<String, Object> rankingItem, CategoryExpenseSketches.Sketch sketch) {
+        if (sketch == null) {
+            return;
+        }
+        rankingItem.put("median", LedgerMoney.toBigDecimal(Math.round(sketch.quantile(0.5))));
+        rankingItem.put("p90", LedgerMoney.toBigDecimal(Math.round(sketch.quantile(0.9))));
+        rankingItem.put("p99", LedgerMoney.toBigDecimal(Math.round(sketch.quantile(0.99))));
+
+        List<Map<String, Object>> topRemarks = new ArrayList<>();
+        for (TopKCounter.Entry entry : sketch.getRemarks().top(TOP_REMARKS)) {
+            Map<String, Object> remark = new LinkedHashMap<>();
+            remark.put("remark", entry.value());
+            remark.put("count", entry.count());
+            topRemarks.add(remark);
+        }
+        rankingItem.put("topRemarks", topRemarks);
+    }
 
-            try {
-                double amount = Double.parseDouble(amountStr);
-                if (amount < 0) {
-                    double absAmount = Math.abs(amount);
+    /**
+     * 分类支出汇总：不限日期时读分类汇总表；按整月筛选时读月份×分类汇总表；
+     * 其他日期范围才回退到 csv_data 上的索引聚合查询。
+     */
+    private List<? extends CategoryAmountSummary> sumExpenseByCategory(String startDate, String endDate) {
+        return ledgerStore.readDatabase(() -> querySumExpenseByCategory(startDate, endDate));
+    }
 
-                    categoryStatsMap.putIfAbsent(category, new HashMap<>());
-                    Map<String, Object> stats = categoryStatsMap.get(category);
+    private List<? extends CategoryAmountSummary> querySumExpenseByCategory(String startDate, String endDate) {
+        Integer startDay = LedgerTime.parseEpochDayOrNull(startDate);
+        Integer endDay = LedgerTime.parseEpochDayOrNull(endDate);
+        if (startDay == null && endDay == null) {
+            return categoryRollupRepository.findAllByOrderByAmountDesc();
+        }
 
-                    stats.put("amount", (Double) stats.getOrDefault("amount", 0.0) + absAmount);
-                    stats.put("count", (Integer) stats.getOrDefault("count", 0) + 1);
-                }
-            } catch (NumberFormatException e) {
-                continue;
-            }
+        LocalDate start = startDay != null ? LocalDate.ofEpochDay(startDay) : MIN_DATE;
+        LocalDate end = endDay != null ? LocalDate.ofEpochDay(endDay) : MAX_DATE;
+        boolean wholeMonths = (startDay == null || start.getDayOfMonth() == 1) &&
+                (endDay == null || end.getDayOfMonth() == end.lengthOfMonth());
+        if (wholeMonths) {
+            return monthlyCategoryRollupRepository.sumByCategory(start.withDayOfMonth(1), end.withDayOfMonth(1));
         }
 
-        List<Map<String, Object>> rankingList = new ArrayList<>();
-        categoryStatsMap.forEach((category, stats) -> {
-            Map<String, Object> rankingItem = new LinkedHashMap<>();
-            rankingItem.put("category", category);
-            rankingItem.put("amount", stats.get("amount"));
-            rankingItem.put("count", stats.get("count"));
-            rankingList.add(rankingItem);
-        });
+        // 结束日期包含当天，转换为次日零点作为开区间上界
+        return csvDataRepository.sumExpenseByCategory(start.atStartOfDay(), end.plusDays(1).atStartOfDay());
+    }
 
-        rankingList.sort((a, b) ->
-                Double.compare((Double) b.get("amount"), (Double) a.get("amount")));
+    private LocalDate startDateOrMin(String startDate) {
+        Integer startDay = LedgerTime.parseEpochDayOrNull(startDate);
+        return startDay != null ? LocalDate.ofEpochDay(startDay) : MIN_DATE;
+    }
 
-        return rankingList;
+    private LocalDate endDateOrMax(String endDate) {
+        Integer endDay = LedgerTime.parseEpochDayOrNull(endDate);
+        return endDay != null ? LocalDate.ofEpochDay(endDay) : MAX_DATE;
+    }
+
+    private String formatCents(long cents) {
+        return LedgerMoney.formatCents(cents);
     }
-}
\ No newline at end of file
+}
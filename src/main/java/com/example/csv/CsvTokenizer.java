@@ -0,0 +1,228 @@
+package com.example.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * 按 RFC 4180 逐条读取CSV记录的分词器。
+ * <p>
+ * 输入按块读入一个复用的字符缓冲区，当前记录中各字段的内容（已去掉包围的引号、"" 已还原为 "）
+ * 依次写入另一个复用的记录缓冲区，字段以 [fieldStart, fieldEnd) 下标的形式返回，
+ * 读取过程中不会为每个字段或每一行创建对象。
+ * <p>
+ * 支持的格式：
+ * <ul>
+ *     <li>引号内的逗号、换行，以及用两个双引号表示的引号字符；</li>
+ *     <li>\n、\r\n 和单独的 \r 三种换行符；</li>
+ *     <li>开引号前的空白会被忽略；不在字段开头的引号、闭引号后多余的字符按普通字符保留。</li>
+ * </ul>
+ */
+public final class CsvTokenizer {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private final Reader reader;
+    private final char[] buffer;
+    private int position;
+    private int limit;
+    private boolean eof;
+    // 上一条记录以 \r 结束，下一个字符如果是 \n 属于同一个换行符
+    private boolean skipLineFeed;
+
+    private char[] record = new char[256];
+    private int recordLength;
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+    private int fieldCount;
+    private boolean quotedRecord;
+
+    private long lineNumber;
+    private long recordLineNumber;
+
+    public CsvTokenizer(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvTokenizer(Reader reader, int bufferSize) {
+        this(reader, bufferSize, 1);
+    }
+
+    /**
+     * @param firstLineNumber 输入第一行在原文件中的行号，用于分块解析时在错误信息中给出正确的行号
+     */
+    public CsvTokenizer(Reader reader, int bufferSize, long firstLineNumber) {
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+        this.lineNumber = firstLineNumber;
+    }
+
+    /**
+     * 读取下一条记录。
+     *
+     * @return 读到文件末尾时返回 false
+     * @throws IllegalArgumentException 文件在引号内结束
+     */
+    public boolean nextRecord() throws IOException {
+        recordLength = 0;
+        fieldCount = 0;
+        quotedRecord = false;
+        recordLineNumber = lineNumber;
+
+        int state = FIELD_START;
+        int fieldStart = 0;
+        boolean started = false;
+
+        while (true) {
+            if (position == limit && !fill()) {
+                if (!started) {
+                    return false;
+                }
+                if (state == QUOTED) {
+                    throw new IllegalArgumentException("第" + recordLineNumber + "行开始的引号没有闭合");
+                }
+                endField(fieldStart);
+                return true;
+            }
+
+            char c = buffer[position++];
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            started = true;
+
+            if (state == QUOTED) {
+                if (c == '"') {
+                    state = QUOTE_IN_QUOTED;
+                } else {
+                    if (c == '\n') {
+                        lineNumber++;
+                    }
+                    append(c);
+                }
+                continue;
+            }
+
+            if (c == ',') {
+                endField(fieldStart);
+                fieldStart = recordLength;
+                state = FIELD_START;
+            } else if (c == '\n' || c == '\r') {
+                lineNumber++;
+                skipLineFeed = c == '\r';
+                endField(fieldStart);
+                return true;
+            } else if (c == '"' && state != QUOTE_IN_QUOTED && isBlank(fieldStart, recordLength)) {
+                // 开引号：丢弃之前的空白
+                recordLength = fieldStart;
+                quotedRecord = true;
+                state = QUOTED;
+            } else if (c == '"' && state == QUOTE_IN_QUOTED) {
+                append('"');
+                state = QUOTED;
+            } else {
+                append(c);
+                state = UNQUOTED;
+            }
+        }
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return 当前记录的字符缓冲区，字段内容位于 [fieldStart(i), fieldEnd(i)) 内，下一次读取时会被覆盖
+     */
+    public char[] chars() {
+        return record;
+    }
+
+    public int fieldStart(int index) {
+        return fieldStarts[index];
+    }
+
+    public int fieldEnd(int index) {
+        return fieldEnds[index];
+    }
+
+    /**
+     * @return 去掉首尾空白后的字段内容
+     */
+    public String field(int index) {
+        int start = fieldStarts[index];
+        int end = fieldEnds[index];
+        while (start < end && record[start] <= ' ') {
+            start++;
+        }
+        while (end > start && record[end - 1] <= ' ') {
+            end--;
+        }
+        return new String(record, start, end - start);
+    }
+
+    /**
+     * @return 当前记录是否为空行（只有空白且不含引号）
+     */
+    public boolean isBlankRecord() {
+        return fieldCount == 1 && !quotedRecord && isBlank(0, recordLength);
+    }
+
+    /**
+     * @return 当前记录在文件中的起始行号，从 1 开始
+     */
+    public long recordLineNumber() {
+        return recordLineNumber;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (record[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(char c) {
+        if (recordLength == record.length) {
+            record = Arrays.copyOf(record, record.length << 1);
+        }
+        record[recordLength++] = c;
+    }
+
+    private void endField(int fieldStart) {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, fieldCount << 1);
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount << 1);
+        }
+        fieldStarts[fieldCount] = fieldStart;
+        fieldEnds[fieldCount] = recordLength;
+        fieldCount++;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.csv;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * 每日收支汇总，由导入流程与 csv_data 同步维护。
+ */
+@Entity
+@Table(name = "csv_daily_rollup")
+public class DailyRollup {
+    @Id
+    @Column(name = "stat_date")
+    private LocalDate statDate;
+
+    @Column(precision = 19, scale = 2)
+    private BigDecimal income;
+
+    @Column(precision = 19, scale = 2)
+    private BigDecimal expense;
+
+    @Column(name = "record_count")
+    private Long count;
+
+    public DailyRollup() {
+    }
+
+    public LocalDate getStatDate() {
+        return statDate;
+    }
+
+    public BigDecimal getIncome() {
+        return income;
+    }
+
+    public BigDecimal getExpense() {
+        return expense;
+    }
+
+    public Long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.csv;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface DailyRollupRepository extends JpaRepository<DailyRollup, LocalDate> {
+    List<DailyRollup> findByStatDateBetweenOrderByStatDate(LocalDate start, LocalDate end);
+}
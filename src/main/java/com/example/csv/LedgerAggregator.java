@@ -0,0 +1,104 @@
+package com.example.csv;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按时间段（可选再按分类、账户或账本分组）汇总快照中的金额。
+ * <p>
+ * 快照中的行按时间排序，同一时间段的行是连续的：遍历一次区间，用按字典编号下标的基本类型数组
+ * 累计 sum/count/min/max，时间段变化时输出上一段的结果并清空用到的槽位。
+ * 时间段的计算只在日期变化时做一次，不会为每一行创建对象。
+ */
+public final class LedgerAggregator {
+
+    /**
+     * 一个时间段（和分组值）的汇总结果，金额单位为分。
+     *
+     * @param pivotId 分组值的字典编号，不分组时为 {@link LedgerSnapshot#NULL_ID}
+     */
+    public record Bucket(int startDay, String label, int pivotId, long sum, long count, long min, long max) {
+    }
+
+    private LedgerAggregator() {
+    }
+
+    /**
+     * @param pivot 分组维度，null 表示只按时间段汇总
+     * @return 按时间段升序、同一时间段内按分组值的字典编号排列的结果，没有数据的组合不出现
+     */
+    public static List<Bucket> aggregate(LedgerSnapshot snapshot, LedgerSnapshot.Range range,
+                                         TimeGranularity granularity, PivotDimension pivot) {
+        // 槽位 0 存放空值，其余槽位为字典编号 + 1
+        int slots = pivot == null ? 1 : pivot.valueCount(snapshot) + 1;
+        Accumulators accumulators = new Accumulators(slots);
+        List<Bucket> buckets = new ArrayList<>();
+
+        int lastDay = 0;
+        int bucketStartDay = 0;
+        String bucketLabel = null;
+        LedgerSnapshot.Range valid = snapshot.validRows(range);
+        for (int row = valid.from(); row < valid.to(); row++) {
+            int day = snapshot.epochDay(row);
+            if (bucketLabel == null || day != lastDay) {
+                lastDay = day;
+                LocalDate start = granularity.bucketStart(LocalDate.ofEpochDay(day));
+                int startDay = (int) start.toEpochDay();
+                if (bucketLabel == null || startDay != bucketStartDay) {
+                    accumulators.flush(bucketStartDay, bucketLabel, buckets);
+                    bucketStartDay = startDay;
+                    bucketLabel = granularity.label(start);
+                }
+            }
+            int slot = pivot == null ? 0 : pivot.valueId(snapshot, row) + 1;
+            accumulators.add(slot, snapshot.amount(row));
+        }
+        accumulators.flush(bucketStartDay, bucketLabel, buckets);
+        return buckets;
+    }
+
+    private static final class Accumulators {
+        private final long[] sums;
+        private final long[] counts;
+        private final long[] mins;
+        private final long[] maxs;
+        // 当前时间段中出现过的槽位，清空时只需处理这些
+        private final int[] touched;
+        private int touchedCount;
+
+        Accumulators(int slots) {
+            sums = new long[slots];
+            counts = new long[slots];
+            mins = new long[slots];
+            maxs = new long[slots];
+            touched = new int[slots];
+        }
+
+        void add(int slot, long amount) {
+            if (counts[slot] == 0) {
+                touched[touchedCount++] = slot;
+                mins[slot] = amount;
+                maxs[slot] = amount;
+            } else if (amount < mins[slot]) {
+                mins[slot] = amount;
+            } else if (amount > maxs[slot]) {
+                maxs[slot] = amount;
+            }
+            sums[slot] += amount;
+            counts[slot]++;
+        }
+
+        void flush(int startDay, String label, List<Bucket> buckets) {
+            Arrays.sort(touched, 0, touchedCount);
+            for (int i = 0; i < touchedCount; i++) {
+                int slot = touched[i];
+                buckets.add(new Bucket(startDay, label, slot - 1, sums[slot], counts[slot], mins[slot], maxs[slot]));
+                sums[slot] = 0;
+                counts[slot] = 0;
+            }
+            touchedCount = 0;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.csv;
+
+/**
+ * 快照按天的累计收支（前缀和），任意日期范围的合计只需两次数组读取。
+ * <p>
+ * 只为数据中实际出现的日期建立下标（升序的纪元日数组，按日期查找时二分），下标 i 处的值是前 i 个日期的累计值；
+ * 分类支出同样按天累计。内存占用为 有数据的天数 × (分类数 + 1) × 2 个 long，随快照一起在导入后重建，
+ * 个别日期写错的行（如 0024 年）不会让数组覆盖中间几十万个空白的日子。
+ * 与汇总表的口径一致：金额 >= 0 计入收入，< 0 计入支出（支出为负数）；分类支出为正数，不含空分类。
+ */
+public final class LedgerDailyTotals {
+
+    /**
+     * 日期下标区间 [from, to)。
+     */
+    public record Window(int from, int to) {
+    }
+
+    // 数据中出现过的纪元日，升序且不重复
+    private final int[] days;
+    private final long[] incomePrefix;
+    private final long[] expensePrefix;
+    private final long[] countPrefix;
+    private final long[][] categoryExpensePrefix;
+    private final long[][] categoryCountPrefix;
+
+    /**
+     * @param firstRow 第一个有效行，之前的行时间或金额无效，不计入
+     */
+    LedgerDailyTotals(int firstRow, int size, int[] epochDays, long[] amounts, int[] categoryIds, int categoryCount) {
+        // 行按时间排序，相同日期的行相邻
+        int distinctDays = 0;
+        for (int row = firstRow; row < size; row++) {
+            if (row == firstRow || epochDays[row] != epochDays[row - 1]) {
+                distinctDays++;
+            }
+        }
+        this.days = new int[distinctDays];
+        this.incomePrefix = new long[distinctDays + 1];
+        this.expensePrefix = new long[distinctDays + 1];
+        this.countPrefix = new long[distinctDays + 1];
+        this.categoryExpensePrefix = new long[categoryCount][distinctDays + 1];
+        this.categoryCountPrefix = new long[categoryCount][distinctDays + 1];
+
+        // 先记录每天的值（下标 日期序号 + 1），再原地累加成前缀和
+        int day = 0;
+        for (int row = firstRow; row < size; row++) {
+            if (row == firstRow || epochDays[row] != epochDays[row - 1]) {
+                days[day++] = epochDays[row];
+            }
+            long amount = amounts[row];
+            countPrefix[day]++;
+            if (amount >= 0) {
+                incomePrefix[day] += amount;
+            } else {
+                expensePrefix[day] += amount;
+                int categoryId = categoryIds[row];
+                if (categoryId != LedgerSnapshot.NULL_ID) {
+                    categoryExpensePrefix[categoryId][day] -= amount;
+                    categoryCountPrefix[categoryId][day]++;
+                }
+            }
+        }
+        accumulate(incomePrefix);
+        accumulate(expensePrefix);
+        accumulate(countPrefix);
+        for (int categoryId = 0; categoryId < categoryCount; categoryId++) {
+            accumulate(categoryExpensePrefix[categoryId]);
+            accumulate(categoryCountPrefix[categoryId]);
+        }
+    }
+
+    private static void accumulate(long[] values) {
+        for (int i = 1; i < values.length; i++) {
+            values[i] += values[i - 1];
+        }
+    }
+
+    /**
+     * 纪元日 [startDay, endDay] 对应的下标区间，参数为 null 表示不限制。
+     */
+    public Window window(Integer startDay, Integer endDay) {
+        int from = startDay != null ? firstIndexAfter((long) startDay - 1) : 0;
+        int to = endDay != null ? firstIndexAfter(endDay) : days.length;
+        return new Window(from, Math.max(from, to));
+    }
+
+    // 第一个大于 day 的日期的下标，没有时为 days.length
+    private int firstIndexAfter(long day) {
+        int low = 0;
+        int high = days.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] <= day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return 收入合计，单位为分
+     */
+    public long income(Window window) {
+        return incomePrefix[window.to()] - incomePrefix[window.from()];
+    }
+
+    /**
+     * @return 支出合计（负数），单位为分
+     */
+    public long expense(Window window) {
+        return expensePrefix[window.to()] - expensePrefix[window.from()];
+    }
+
+    public long count(Window window) {
+        return countPrefix[window.to()] - countPrefix[window.from()];
+    }
+
+    /**
+     * @return 分类支出合计（正数），单位为分
+     */
+    public long categoryExpense(int categoryId, Window window) {
+        long[] prefix = categoryExpensePrefix[categoryId];
+        return prefix[window.to()] - prefix[window.from()];
+    }
+
+    public long categoryExpenseCount(int categoryId, Window window) {
+        long[] prefix = categoryCountPrefix[categoryId];
+        return prefix[window.to()] - prefix[window.from()];
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.csv;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 金额与以分为单位的 long 之间的转换。
+ * <p>
+ * 解析直接逐字符累加整数和两位小数，第三位小数起按四舍五入（与 BigDecimal 的 HALF_UP 一致），不创建对象；
+ * 科学计数法、超长数字等少见写法交给 BigDecimal 处理，结果与 {@code new BigDecimal(s).setScale(2, HALF_UP)} 完全相同。
+ * 绝对值超过 {@link #MAX_CENTS} 的金额 csv_data.amount_value（DECIMAL(15,2)）存不下，按无法解析处理。
+ * 格式化输出两位小数，与 {@code BigDecimal.valueOf(cents, 2).toPlainString()} 相同。
+ */
+public final class LedgerMoney {
+
+    public static final long INVALID = Long.MIN_VALUE;
+
+    /**
+     * {@link #formatCents(long, char[])} 所需的最小缓冲区长度。
+     */
+    public static final int MAX_FORMATTED_LENGTH = 24;
+
+    /**
+     * 可以解析的最大金额（分），即 DECIMAL(15,2) 的上限 9999999999999.99。
+     */
+    public static final long MAX_CENTS = 999_999_999_999_999L;
+
+    // 整数部分超过该位数时可能溢出，交给 BigDecimal
+    private static final int MAX_FAST_INTEGER_DIGITS = 16;
+
+    private LedgerMoney() {
+    }
+
+    /**
+     * 解析金额为分，无法解析或绝对值超过 {@link #MAX_CENTS} 时返回 {@link #INVALID}。
+     */
+    public static long parseCents(CharSequence text) {
+        if (text == null) {
+            return INVALID;
+        }
+        return parseCents(text, 0, text.length());
+    }
+
+    public static long parseCents(CharSequence text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return INVALID;
+        }
+
+        int i = start;
+        boolean negative = false;
+        char first = text.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+
+        long integer = 0;
+        int integerDigits = 0;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            if (++integerDigits > MAX_FAST_INTEGER_DIGITS) {
+                return parseSlow(text, start, end);
+            }
+            integer = integer * 10 + (c - '0');
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < end && text.charAt(i) == '.') {
+            for (i++; i < end; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                if (fractionDigits < 2) {
+                    fraction = fraction * 10 + (c - '0');
+                } else if (fractionDigits == 2) {
+                    roundUp = c >= '5';
+                }
+                fractionDigits++;
+            }
+        }
+        if (i < end) {
+            // 指数等其他写法
+            return parseSlow(text, start, end);
+        }
+        if (integerDigits == 0 && fractionDigits == 0) {
+            return INVALID;
+        }
+
+        if (fractionDigits == 1) {
+            fraction *= 10;
+        }
+        long cents = integer * 100 + fraction + (roundUp ? 1 : 0);
+        if (cents > MAX_CENTS) {
+            return INVALID;
+        }
+        return negative ? -cents : cents;
+    }
+
+    private static long parseSlow(CharSequence text, int start, int end) {
+        try {
+            long cents = toCents(new BigDecimal(text.subSequence(start, end).toString()));
+            return Math.abs(cents) > MAX_CENTS ? INVALID : cents;
+        } catch (NumberFormatException | ArithmeticException e) {
+            return INVALID;
+        }
+    }
+
+    /**
+     * @throws ArithmeticException 超出 long 范围
+     */
+    public static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    public static String formatCents(long cents) {
+        char[] buffer = new char[MAX_FORMATTED_LENGTH];
+        return new String(buffer, 0, formatCents(cents, buffer));
+    }
+
+    /**
+     * 把金额写入 buffer 开头，用于流式输出时复用缓冲区。
+     *
+     * @param buffer 长度至少为 {@link #MAX_FORMATTED_LENGTH}
+     * @return 写入的字符数
+     */
+    public static int formatCents(long cents, char[] buffer) {
+        if (cents == Long.MIN_VALUE) {
+            // 取反会溢出
+            String text = BigDecimal.valueOf(cents, 2).toPlainString();
+            text.getChars(0, text.length(), buffer, 0);
+            return text.length();
+        }
+        boolean negative = cents < 0;
+        long value = negative ? -cents : cents;
+        long integer = value / 100;
+
+        int integerDigits = 1;
+        for (long rest = integer / 10; rest > 0; rest /= 10) {
+            integerDigits++;
+        }
+        int length = (negative ? 1 : 0) + integerDigits + 3;
+
+        int position = length;
+        long fraction = value % 100;
+        buffer[--position] = (char) ('0' + fraction % 10);
+        buffer[--position] = (char) ('0' + fraction / 10);
+        buffer[--position] = '.';
+        do {
+            buffer[--position] = (char) ('0' + integer % 10);
+            integer /= 10;
+        } while (integer > 0);
+        if (negative) {
+            buffer[0] = '-';
+        }
+        return length;
+    }
+}
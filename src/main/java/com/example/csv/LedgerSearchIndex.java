@@ -0,0 +1,411 @@
+package com.example.csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 备注和分类的倒排索引，随快照在导入后构建。
+ * <p>
+ * 分词：连续的中日韩文字切成相邻两字的二元组（只有一个字时保留单字），字母和数字组成的词转为小写后整体作为一个词，
+ * 其余字符都是分隔符。每个词的倒排表是包含它的快照行号，升序；每 128 个分为一组，组内存与前一个行号的差值
+ * （变长字节编码，通常一到两个字节），每组的第一个行号记在跳表中，查询时可以直接跳到目标行号所在的组。
+ * <p>
+ * 查询的多个关键词取交集：每次把所有倒排表推进到当前最大的行号，直到它们停在同一行。
+ * 快照按时间排序，日期范围就是一个行号区间，从区间起点开始推进、越过终点即停止，不需要先取出全部匹配再过滤。
+ * 中文关键词超过两个字时，二元组的交集只是候选行，还要核对备注或分类是否包含整个关键词。
+ */
+public final class LedgerSearchIndex {
+
+    static final int NO_MORE_ROWS = Integer.MAX_VALUE;
+
+    private static final int BLOCK_SIZE = 128;
+
+    /**
+     * 一次查询的结果。
+     *
+     * @param total   日期范围内的匹配行数
+     * @param rows    从起始行开始的匹配行号，升序
+     * @param hasMore rows 之后是否还有匹配行
+     */
+    public record Matches(int total, int[] rows, boolean hasMore) {
+    }
+
+    // 关键词中的一段连续文字：中日韩文字或字母数字
+    private record Token(String text, boolean cjk) {
+    }
+
+    private final Map<String, Postings> postings;
+    // 中日韩文字到包含它的词，单字查询时取这些倒排表的并集
+    private final Map<Character, Postings[]> postingsByChar;
+
+    LedgerSearchIndex(int size, int[] categoryIds, String[] remarks, String[] categories) {
+        Map<String, PostingsWriter> writers = new HashMap<>();
+        PostingsWriter[][] categoryWriters = new PostingsWriter[categories.length][];
+        for (int categoryId = 0; categoryId < categories.length; categoryId++) {
+            categoryWriters[categoryId] = writersOf(categories[categoryId], writers);
+        }
+        // 备注大量重复，同一备注只分词一次
+        Map<String, PostingsWriter[]> remarkWriters = new HashMap<>();
+
+        for (int row = 0; row < size; row++) {
+            int categoryId = categoryIds[row];
+            if (categoryId != LedgerSnapshot.NULL_ID) {
+                for (PostingsWriter writer : categoryWriters[categoryId]) {
+                    writer.add(row);
+                }
+            }
+            String remark = remarks[row];
+            if (remark != null) {
+                for (PostingsWriter writer : remarkWriters.computeIfAbsent(remark, text -> writersOf(text, writers))) {
+                    writer.add(row);
+                }
+            }
+        }
+
+        Map<String, Postings> built = new HashMap<>(writers.size() * 2);
+        Map<Character, List<Postings>> byChar = new HashMap<>();
+        for (Map.Entry<String, PostingsWriter> entry : writers.entrySet()) {
+            if (entry.getValue().count == 0) {
+                continue;
+            }
+            String term = entry.getKey();
+            Postings termPostings = entry.getValue().build();
+            built.put(term, termPostings);
+            if (isCjk(term.charAt(0))) {
+                for (int i = 0; i < term.length(); i++) {
+                    List<Postings> list = byChar.computeIfAbsent(term.charAt(i), key -> new ArrayList<>());
+                    // 叠字（如“哈哈”）只加一次
+                    if (i == 0 || term.charAt(i) != term.charAt(0)) {
+                        list.add(termPostings);
+                    }
+                }
+            }
+        }
+        this.postings = built;
+        this.postingsByChar = new HashMap<>(byChar.size() * 2);
+        byChar.forEach((c, list) -> postingsByChar.put(c, list.toArray(new Postings[0])));
+    }
+
+    /**
+     * 在行号区间内查找备注或分类同时包含所有关键词的行。
+     *
+     * @param startRow 只返回不小于该行号的匹配行，用于分页；total 仍统计整个区间
+     * @param limit    最多返回的行数
+     * @throws IllegalArgumentException 关键词中没有文字或数字
+     */
+    public Matches search(LedgerSnapshot snapshot, String query, LedgerSnapshot.Range range, int startRow, int limit) {
+        List<Token> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("搜索关键词不能为空");
+        }
+
+        List<RowIterator> iterators = new ArrayList<>();
+        List<String> phrases = new ArrayList<>();
+        for (Token token : tokens) {
+            if (token.cjk() && token.text().length() == 1) {
+                Postings[] containing = postingsByChar.get(token.text().charAt(0));
+                if (containing == null) {
+                    return new Matches(0, new int[0], false);
+                }
+                iterators.add(union(containing, range));
+                continue;
+            }
+            for (String term : terms(token)) {
+                Postings termPostings = postings.get(term);
+                if (termPostings == null) {
+                    return new Matches(0, new int[0], false);
+                }
+                iterators.add(termPostings.cursor());
+            }
+            if (token.cjk() && token.text().length() > 2) {
+                phrases.add(token.text());
+            }
+        }
+        // 从最短的倒排表开始推进，跳过的行最多
+        iterators.sort(Comparator.comparingLong(RowIterator::cost));
+
+        int total = 0;
+        int[] rows = new int[Math.min(limit, 64)];
+        int collected = 0;
+        boolean hasMore = false;
+        RowIterator lead = iterators.get(0);
+        int row = range.from();
+        candidates:
+        while (true) {
+            row = lead.advance(row);
+            if (row >= range.to()) {
+                break;
+            }
+            for (int i = 1; i < iterators.size(); i++) {
+                int other = iterators.get(i).advance(row);
+                if (other != row) {
+                    row = other;
+                    continue candidates;
+                }
+            }
+            if (containsPhrases(snapshot, row, phrases)) {
+                total++;
+                if (row >= startRow) {
+                    if (collected < limit) {
+                        if (collected == rows.length) {
+                            rows = Arrays.copyOf(rows, Math.min(limit, collected * 2));
+                        }
+                        rows[collected++] = row;
+                    } else {
+                        hasMore = true;
+                    }
+                }
+            }
+            row++;
+        }
+        return new Matches(total, Arrays.copyOf(rows, collected), hasMore);
+    }
+
+    /**
+     * @return 索引中不同词的个数
+     */
+    public int termCount() {
+        return postings.size();
+    }
+
+    private static boolean containsPhrases(LedgerSnapshot snapshot, int row, List<String> phrases) {
+        for (String phrase : phrases) {
+            String remark = snapshot.remark(row);
+            String category = snapshot.category(snapshot.categoryId(row));
+            if ((remark == null || !remark.contains(phrase)) && (category == null || !category.contains(phrase))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 单字查询：在日期范围内把所有包含该字的倒排表合并到位图
+    private static RowIterator union(Postings[] list, LedgerSnapshot.Range range) {
+        int from = range.from();
+        int to = range.to();
+        BitSet bits = new BitSet(Math.max(0, to - from));
+        for (Postings termPostings : list) {
+            Postings.Cursor cursor = termPostings.cursor();
+            for (int row = cursor.advance(from); row < to; row = cursor.advance(row + 1)) {
+                bits.set(row - from);
+            }
+        }
+        int cardinality = bits.cardinality();
+        return new RowIterator() {
+            @Override
+            public int advance(int target) {
+                int index = bits.nextSetBit(Math.max(target, from) - from);
+                return index < 0 ? NO_MORE_ROWS : from + index;
+            }
+
+            @Override
+            public long cost() {
+                return cardinality;
+            }
+        };
+    }
+
+    private static PostingsWriter[] writersOf(String text, Map<String, PostingsWriter> writers) {
+        if (text == null) {
+            return new PostingsWriter[0];
+        }
+        Set<String> terms = new LinkedHashSet<>();
+        for (Token token : tokenize(text)) {
+            terms.addAll(terms(token));
+        }
+        PostingsWriter[] result = new PostingsWriter[terms.size()];
+        int i = 0;
+        for (String term : terms) {
+            result[i++] = writers.computeIfAbsent(term, key -> new PostingsWriter());
+        }
+        return result;
+    }
+
+    private static List<String> terms(Token token) {
+        String text = token.text();
+        if (!token.cjk() || text.length() == 1) {
+            return List.of(text);
+        }
+        List<String> bigrams = new ArrayList<>(text.length() - 1);
+        for (int i = 0; i + 1 < text.length(); i++) {
+            bigrams.add(text.substring(i, i + 2));
+        }
+        return bigrams;
+    }
+
+    private static List<Token> tokenize(String text) {
+        List<Token> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                int start = i;
+                while (i < length && isCjk(text.charAt(i))) {
+                    i++;
+                }
+                tokens.add(new Token(text.substring(start, i), true));
+            } else if (Character.isLetterOrDigit(c)) {
+                StringBuilder word = new StringBuilder();
+                while (i < length && !isCjk(text.charAt(i)) && Character.isLetterOrDigit(text.charAt(i))) {
+                    word.append(Character.toLowerCase(text.charAt(i)));
+                    i++;
+                }
+                tokens.add(new Token(word.toString(), false));
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private interface RowIterator {
+        /**
+         * @return 不小于 target 的第一个行号，没有时返回 {@link #NO_MORE_ROWS}；target 不能小于上一次的返回值
+         */
+        int advance(int target);
+
+        long cost();
+    }
+
+    // 一个词的倒排表，每组第一个行号存在 blockRows 中，data 中只有组内其余行号的差值
+    private static final class Postings {
+        private final byte[] data;
+        private final int count;
+        private final int[] blockRows;
+        private final int[] blockOffsets;
+
+        Postings(byte[] data, int count, int[] blockRows, int[] blockOffsets) {
+            this.data = data;
+            this.count = count;
+            this.blockRows = blockRows;
+            this.blockOffsets = blockOffsets;
+        }
+
+        Cursor cursor() {
+            return new Cursor();
+        }
+
+        final class Cursor implements RowIterator {
+            private int index = -1;
+            private int row = -1;
+            private int position;
+
+            @Override
+            public int advance(int target) {
+                if (row >= target) {
+                    return row;
+                }
+                int nextBlock = index < 0 ? 0 : index / BLOCK_SIZE + 1;
+                if (nextBlock < blockRows.length && blockRows[nextBlock] <= target) {
+                    int block = lastBlockAtMost(target, nextBlock);
+                    index = block * BLOCK_SIZE;
+                    row = blockRows[block];
+                    position = blockOffsets[block];
+                    if (row == target) {
+                        return row;
+                    }
+                }
+                while (++index < count) {
+                    if (index % BLOCK_SIZE == 0) {
+                        row = blockRows[index / BLOCK_SIZE];
+                        position = blockOffsets[index / BLOCK_SIZE];
+                    } else {
+                        int b = data[position++];
+                        int delta = b & 0x7F;
+                        for (int shift = 7; b < 0; shift += 7) {
+                            b = data[position++];
+                            delta |= (b & 0x7F) << shift;
+                        }
+                        row += delta;
+                    }
+                    if (row >= target) {
+                        return row;
+                    }
+                }
+                index = count;
+                row = NO_MORE_ROWS;
+                return row;
+            }
+
+            @Override
+            public long cost() {
+                return count;
+            }
+
+            private int lastBlockAtMost(int target, int low) {
+                int high = blockRows.length - 1;
+                while (low < high) {
+                    int middle = (low + high + 1) >>> 1;
+                    if (blockRows[middle] <= target) {
+                        low = middle;
+                    } else {
+                        high = middle - 1;
+                    }
+                }
+                return low;
+            }
+        }
+    }
+
+    private static final class PostingsWriter {
+        private byte[] data = new byte[8];
+        private int length;
+        private int count;
+        private int last = -1;
+        private int[] blockRows = new int[1];
+        private int[] blockOffsets = new int[1];
+
+        void add(int row) {
+            // 备注和分类可能包含同一个词
+            if (row == last) {
+                return;
+            }
+            if (count % BLOCK_SIZE == 0) {
+                int block = count / BLOCK_SIZE;
+                if (block == blockRows.length) {
+                    blockRows = Arrays.copyOf(blockRows, block * 2);
+                    blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+                }
+                blockRows[block] = row;
+                blockOffsets[block] = length;
+            } else {
+                if (length + 5 > data.length) {
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+                int delta = row - last;
+                while (delta >= 0x80) {
+                    data[length++] = (byte) (delta | 0x80);
+                    delta >>>= 7;
+                }
+                data[length++] = (byte) delta;
+            }
+            last = row;
+            count++;
+        }
+
+        Postings build() {
+            int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            return new Postings(Arrays.copyOf(data, length), count,
+                    Arrays.copyOf(blockRows, blocks), Arrays.copyOf(blockOffsets, blocks));
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package com.example.csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 账单数据的只读列式快照。
+ * <p>
+ * 每一列是一个基本类型数组：金额以分为单位存为 long，时间存为纪元秒和纪元日，
+ * 分类、账户、账本、货币做字典编码后只存 int 编号。行按 (时间, id) 升序排列，与 csv_data 上的分页顺序一致。
+ * 统计方法直接遍历这些数组，不会为每一行分配对象。
+ * <p>
+ * 时间或金额无法解析的行同样保留，纪元秒记为 {@link LedgerTime#INVALID}，因此排在最前面，并保存时间和金额的原始文本。
+ * 这些行只出现在不限日期的明细、搜索和导出中，按日期筛选和各类统计都会跳过它们。
+ */
+public final class LedgerSnapshot {
+
+    /**
+     * 字典编码中表示空值的编号。
+     */
+    public static final int NULL_ID = -1;
+
+    /**
+     * 快照中一段连续的行，下标区间为 [from, to)。
+     */
+    public record Range(int from, int to) {
+        public int size() {
+            return to - from;
+        }
+    }
+
+    private final int size;
+    private final long[] ids;
+    private final long[] epochSeconds;
+    private final int[] epochDays;
+    private final long[] amounts;
+    private final int[] categoryIds;
+    private final int[] accountIds;
+    private final int[] bookIds;
+    private final int[] currencyIds;
+    private final String[] remarks;
+    // 前 invalidCount 行时间和金额的原始文本
+    private final String[] invalidTimes;
+    private final String[] invalidAmounts;
+
+    private final String[] categories;
+    private final String[] accounts;
+    private final String[] books;
+    private final String[] currencies;
+
+    private final int invalidCount;
+    private final LedgerDailyTotals dailyTotals;
+    private final CategoryExpenseSketches expenseSketches;
+    private final LedgerSearchIndex searchIndex;
+
+    private LedgerSnapshot(Builder builder, int[] order) {
+        this.size = builder.size;
+        this.ids = new long[size];
+        this.epochSeconds = new long[size];
+        this.epochDays = new int[size];
+        this.amounts = new long[size];
+        this.categoryIds = new int[size];
+        this.accountIds = new int[size];
+        this.bookIds = new int[size];
+        this.currencyIds = new int[size];
+        this.remarks = new String[size];
+        this.invalidCount = builder.invalidValues.size();
+        this.invalidTimes = new String[invalidCount];
+        this.invalidAmounts = new String[invalidCount];
+        for (int i = 0; i < size; i++) {
+            int source = order[i];
+            ids[i] = builder.ids[source];
+            epochSeconds[i] = builder.epochSeconds[source];
+            if (i < invalidCount) {
+                String[] values = builder.invalidValues.get(source);
+                invalidTimes[i] = values[0];
+                invalidAmounts[i] = values[1];
+                epochDays[i] = Integer.MIN_VALUE;
+            } else {
+                epochDays[i] = LedgerTime.toEpochDay(epochSeconds[i]);
+            }
+            amounts[i] = builder.amounts[source];
+            categoryIds[i] = builder.categoryIds[source];
+            accountIds[i] = builder.accountIds[source];
+            bookIds[i] = builder.bookIds[source];
+            currencyIds[i] = builder.currencyIds[source];
+            remarks[i] = builder.remarks[source];
+        }
+        this.categories = builder.categories.toArray();
+        this.accounts = builder.accounts.toArray();
+        this.books = builder.books.toArray();
+        this.currencies = builder.currencies.toArray();
+        this.dailyTotals = new LedgerDailyTotals(invalidCount, size, epochDays, amounts, categoryIds,
+                categories.length);
+        this.expenseSketches = new CategoryExpenseSketches(invalidCount, size, epochDays, amounts, categoryIds,
+                remarks, categories.length);
+        this.searchIndex = new LedgerSearchIndex(size, categoryIds, remarks, categories);
+    }
+
+    public static LedgerSnapshot empty() {
+        return new Builder().build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 按天累计的收支，用于常数时间计算任意日期范围的合计
+     */
+    public LedgerDailyTotals dailyTotals() {
+        return dailyTotals;
+    }
+
+    /**
+     * @return 按月份 × 分类预先计算的支出分位数和常见备注
+     */
+    public CategoryExpenseSketches expenseSketches() {
+        return expenseSketches;
+    }
+
+    /**
+     * @return 备注和分类的倒排索引
+     */
+    public LedgerSearchIndex searchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * @return 时间或金额无法解析的行数，这些行位于快照的最前面
+     */
+    public int getInvalidCount() {
+        return invalidCount;
+    }
+
+    /**
+     * @return 行的时间和金额是否有效；无效的行没有纪元秒、纪元日和金额，只能读取原始文本
+     */
+    public boolean isValid(int row) {
+        return row >= invalidCount;
+    }
+
+    /**
+     * @return 时间，格式为 yyyy-MM-dd HH:mm:ss；无效的行返回原始文本
+     */
+    public String timeText(int row) {
+        return row < invalidCount ? invalidTimes[row] : LedgerTime.formatDateTime(epochSeconds[row]);
+    }
+
+    /**
+     * @return 金额（元），无效的行返回原始文本
+     */
+    public String amountText(int row) {
+        return row < invalidCount ? invalidAmounts[row] : LedgerMoney.formatCents(amounts[row]);
+    }
+
+    /**
+     * @return 行在 csv_data 中的主键
+     */
+    public long id(int row) {
+        return ids[row];
+    }
+
+    public long epochSecond(int row) {
+        return epochSeconds[row];
+    }
+
+    public int epochDay(int row) {
+        return epochDays[row];
+    }
+
+    /**
+     * @return 金额，单位为分
+     */
+    public long amount(int row) {
+        return amounts[row];
+    }
+
+    public int categoryId(int row) {
+        return categoryIds[row];
+    }
+
+    public int accountId(int row) {
+        return accountIds[row];
+    }
+
+    public int bookId(int row) {
+        return bookIds[row];
+    }
+
+    public int currencyId(int row) {
+        return currencyIds[row];
+    }
+
+    public String remark(int row) {
+        return remarks[row];
+    }
+
+    public int categoryCount() {
+        return categories.length;
+    }
+
+    public int accountCount() {
+        return accounts.length;
+    }
+
+    public int bookCount() {
+        return books.length;
+    }
+
+    public String category(int id) {
+        return id == NULL_ID ? null : categories[id];
+    }
+
+    public String account(int id) {
+        return id == NULL_ID ? null : accounts[id];
+    }
+
+    public String book(int id) {
+        return id == NULL_ID ? null : books[id];
+    }
+
+    public String currency(int id) {
+        return id == NULL_ID ? null : currencies[id];
+    }
+
+    /**
+     * 返回纪元日落在 [startDay, endDay] 内的行区间，参数为 null 表示不限制。
+     * 行按时间排序，两端各做一次二分查找，耗时与快照大小无关。两个参数都为 null 时包含无效的行，否则不包含。
+     */
+    public Range range(Integer startDay, Integer endDay) {
+        if (startDay == null && endDay == null) {
+            return all();
+        }
+        int from = startDay != null ? firstRowAfterDay(startDay - 1L) : invalidCount;
+        int to = endDay != null ? Math.max(from, firstRowAfterDay(endDay)) : size;
+        return new Range(from, to);
+    }
+
+    // 第一个纪元日大于 day 的行，不存在时返回 size
+    private int firstRowAfterDay(long day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (epochDays[middle] <= day) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public Range all() {
+        return new Range(0, size);
+    }
+
+    /**
+     * @return 去掉无效行后的区间，用于统计
+     */
+    public Range validRows(Range range) {
+        return new Range(Math.max(range.from(), invalidCount), Math.max(range.to(), invalidCount));
+    }
+
+    /**
+     * 在区间内二分查找第一个排在 (epochSecond, id) 之后的行，用于按游标分页。
+     */
+    public int seekAfter(Range range, long epochSecond, long id) {
+        int low = range.from();
+        int high = range.to();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (epochSeconds[middle] < epochSecond || (epochSeconds[middle] == epochSecond && ids[middle] <= id)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 逐行追加数据，最后调用 {@link #build()} 按时间排序生成快照。行必须按 id 升序追加，排序是稳定的，
+     * 时间相同的行因此保持 id 顺序。
+     */
+    public static final class Builder {
+
+        private int size;
+        private long[] ids = new long[1024];
+        private long[] epochSeconds = new long[1024];
+        private long[] amounts = new long[1024];
+        private int[] categoryIds = new int[1024];
+        private int[] accountIds = new int[1024];
+        private int[] bookIds = new int[1024];
+        private int[] currencyIds = new int[1024];
+        private String[] remarks = new String[1024];
+
+        private final Dictionary categories = new Dictionary();
+        private final Dictionary accounts = new Dictionary();
+        private final Dictionary books = new Dictionary();
+        private final Dictionary currencies = new Dictionary();
+
+        // 无效行的下标到 {时间, 金额} 原始文本
+        private final Map<Integer, String[]> invalidValues = new HashMap<>();
+
+        public Builder add(CsvData csvData) {
+            // 导入时金额已解析为分，不再重复解析
+            return add(csvData.getId(), csvData.getCategory(), csvData.getTime(),
+                    LedgerTime.parseEpochSecond(csvData.getTime()), csvData.getAmount(), csvData.getAmountCents(),
+                    csvData.getAccount(), csvData.getBook(), csvData.getCurrency(), csvData.getRemark());
+        }
+
+        public Builder add(long id, String category, String time, String amount, String account,
+                           String book, String currency, String remark) {
+            return add(id, category, time, LedgerTime.parseEpochSecond(time), amount, LedgerMoney.parseCents(amount),
+                    account, book, currency, remark);
+        }
+
+        private Builder add(long id, String category, String time, long epochSecond, String amount, long cents,
+                            String account, String book, String currency, String remark) {
+            if (size == epochSeconds.length) {
+                grow();
+            }
+            if (epochSecond == LedgerTime.INVALID || cents == LedgerMoney.INVALID) {
+                // 排序后排在最前面，统计时跳过
+                invalidValues.put(size, new String[]{time, amount});
+                epochSecond = LedgerTime.INVALID;
+                cents = 0;
+            }
+            ids[size] = id;
+            epochSeconds[size] = epochSecond;
+            amounts[size] = cents;
+            categoryIds[size] = categories.idOf(category);
+            accountIds[size] = accounts.idOf(account);
+            bookIds[size] = books.idOf(book);
+            currencyIds[size] = currencies.idOf(currency);
+            remarks[size] = remark;
+            size++;
+            return this;
+        }
+
+        /**
+         * 追加已有快照中的全部行，字典编号按本构建器的字典重新映射。
+         */
+        public Builder addAll(LedgerSnapshot snapshot) {
+            int[] categoryMap = remap(snapshot.categories, categories);
+            int[] accountMap = remap(snapshot.accounts, accounts);
+            int[] bookMap = remap(snapshot.books, books);
+            int[] currencyMap = remap(snapshot.currencies, currencies);
+
+            for (int row = 0; row < snapshot.size; row++) {
+                if (size == epochSeconds.length) {
+                    grow();
+                }
+                if (row < snapshot.invalidCount) {
+                    invalidValues.put(size, new String[]{snapshot.invalidTimes[row], snapshot.invalidAmounts[row]});
+                }
+                ids[size] = snapshot.ids[row];
+                epochSeconds[size] = snapshot.epochSeconds[row];
+                amounts[size] = snapshot.amounts[row];
+                categoryIds[size] = mapId(categoryMap, snapshot.categoryIds[row]);
+                accountIds[size] = mapId(accountMap, snapshot.accountIds[row]);
+                bookIds[size] = mapId(bookMap, snapshot.bookIds[row]);
+                currencyIds[size] = mapId(currencyMap, snapshot.currencyIds[row]);
+                remarks[size] = snapshot.remarks[row];
+                size++;
+            }
+            return this;
+        }
+
+        private static int[] remap(String[] values, Dictionary dictionary) {
+            int[] ids = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                ids[i] = dictionary.idOf(values[i]);
+            }
+            return ids;
+        }
+
+        private static int mapId(int[] ids, int id) {
+            return id == NULL_ID ? NULL_ID : ids[id];
+        }
+
+        public LedgerSnapshot build() {
+            return new LedgerSnapshot(this, sortedOrder());
+        }
+
+        private void grow() {
+            int capacity = epochSeconds.length + (epochSeconds.length >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            epochSeconds = Arrays.copyOf(epochSeconds, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            categoryIds = Arrays.copyOf(categoryIds, capacity);
+            accountIds = Arrays.copyOf(accountIds, capacity);
+            bookIds = Arrays.copyOf(bookIds, capacity);
+            currencyIds = Arrays.copyOf(currencyIds, capacity);
+            remarks = Arrays.copyOf(remarks, capacity);
+        }
+
+        // 按时间做稳定的自底向上归并排序，返回排序后的行下标
+        private int[] sortedOrder() {
+            int[] order = new int[size];
+            boolean sorted = true;
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+                if (i > 0 && epochSeconds[i] < epochSeconds[i - 1]) {
+                    sorted = false;
+                }
+            }
+            if (sorted) {
+                return order;
+            }
+
+            int[] source = order;
+            int[] target = new int[size];
+            for (int width = 1; width < size; width <<= 1) {
+                for (int low = 0; low < size; low += width << 1) {
+                    int middle = Math.min(low + width, size);
+                    int high = Math.min(low + (width << 1), size);
+                    int i = low;
+                    int j = middle;
+                    int k = low;
+                    while (i < middle && j < high) {
+                        target[k++] = epochSeconds[source[j]] < epochSeconds[source[i]] ? source[j++] : source[i++];
+                    }
+                    while (i < middle) {
+                        target[k++] = source[i++];
+                    }
+                    while (j < high) {
+                        target[k++] = source[j++];
+                    }
+                }
+                int[] swap = source;
+                source = target;
+                target = swap;
+            }
+            return source;
+        }
+    }
+
+    // 构建期间使用的字典，快照中只保留编号到字符串的数组
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int idOf(String value) {
+            if (value == null) {
+                return NULL_ID;
+            }
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        String[] toArray() {
+            return values.toArray(new String[0]);
+        }
+    }
+}
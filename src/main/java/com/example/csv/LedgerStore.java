@@ -0,0 +1,132 @@
+package com.example.csv;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 持有当前的 {@link LedgerSnapshot}。导入时直接发布新快照；进程启动后第一次读取时从数据库流式加载。
+ * <p>
+ * 每次发布新快照时数据集版本号加一，版本号与快照放在同一个不可变对象中一起替换，
+ * 读到某个版本号就一定对应该版本的快照。
+ * <p>
+ * 导入让数据库中的新数据（明细和汇总表）可见，与发布新快照在同一把写锁内完成；直接查询数据库汇总表的
+ * 请求通过 {@link #readDatabase} 持有读锁，因此看到的数据库内容总是与当前版本号一致；
+ * 同时需要快照和数据库的请求用 {@link #read}，两者在同一个读锁区间内读取，属于同一个版本。
+ */
+@Component
+public class LedgerStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(LedgerStore.class);
+
+    private static final String LOAD_SQL =
+            "SELECT id, category, time, amount, account, book, currency, remark FROM " + CsvBulkLoader.TABLE +
+                    " ORDER BY id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile State state = new State(null, 0);
+
+    private final ReentrantReadWriteLock publishLock = new ReentrantReadWriteLock();
+
+    /**
+     * 让导入的数据在数据库中可见的操作。
+     */
+    @FunctionalInterface
+    public interface DatabaseCommit {
+        void run() throws SQLException;
+    }
+
+    public LedgerStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public LedgerSnapshot current() {
+        State current = state;
+        if (current.snapshot() == null) {
+            synchronized (this) {
+                current = state;
+                if (current.snapshot() == null) {
+                    // 首次加载的是库中已有数据，不改变版本号
+                    current = new State(loadFromDatabase(), current.version());
+                    state = current;
+                }
+            }
+        }
+        return current.snapshot();
+    }
+
+    /**
+     * @return 当前数据集版本号，每次导入成功后递增
+     */
+    public long version() {
+        return state.version();
+    }
+
+    /**
+     * 提交导入的数据并发布新快照、递增版本号。两者在写锁内一起完成，其间的 {@link #readDatabase} 查询会等待；
+     * 与首次加载互斥，保证最后生效的总是导入产生的快照。
+     */
+    public void publish(LedgerSnapshot newSnapshot, DatabaseCommit commit) throws SQLException {
+        publishLock.writeLock().lock();
+        try {
+            commit.run();
+            synchronized (this) {
+                state = new State(newSnapshot, state.version() + 1);
+            }
+        } finally {
+            publishLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 在读锁内查询数据库（汇总表等），不会读到已提交但快照和版本号尚未发布的导入。
+     */
+    public <T> T readDatabase(Supplier<T> query) {
+        publishLock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            publishLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 在读锁内取当前快照并查询数据库，快照与查到的数据库内容属于同一个版本。
+     */
+    public <T> T read(Function<LedgerSnapshot, T> query) {
+        return readDatabase(() -> query.apply(current()));
+    }
+
+    private record State(LedgerSnapshot snapshot, long version) {
+    }
+
+    private LedgerSnapshot loadFromDatabase() {
+        long start = System.currentTimeMillis();
+        LedgerSnapshot.Builder builder = new LedgerSnapshot.Builder();
+
+        // fetchSize 为 Integer.MIN_VALUE 时 MySQL 驱动逐行流式返回结果，不会把整张表读进内存
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(LOAD_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            return ps;
+        }, (RowCallbackHandler) rs -> builder.add(rs.getLong(1),
+                rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5),
+                rs.getString(6), rs.getString(7), rs.getString(8)));
+
+        LedgerSnapshot loaded = builder.build();
+        logger.info("Loaded ledger snapshot with {} rows ({} invalid) in {} ms",
+                loaded.size(), loaded.getInvalidCount(), System.currentTimeMillis() - start);
+        return loaded;
+    }
+}
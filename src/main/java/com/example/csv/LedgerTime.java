@@ -0,0 +1,159 @@
+package com.example.csv;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 账单时间与纪元秒/纪元日之间的转换。时间按本地时间处理，不做时区换算。
+ * <p>
+ * 支持 yyyy-MM-dd、yyyy/MM/dd、yyyy-MM-dd HH:mm、yyyy-MM-dd HH:mm:ss 等格式，月、日、时、分、秒可以是一位数字。
+ */
+public final class LedgerTime {
+
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final int SECONDS_PER_DAY = 86400;
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private LedgerTime() {
+    }
+
+    /**
+     * 解析时间字符串为纪元秒，无法解析时返回 {@link #INVALID}。
+     */
+    public static long parseEpochSecond(CharSequence text) {
+        if (text == null) {
+            return INVALID;
+        }
+        return parseEpochSecond(text, 0, text.length());
+    }
+
+    public static long parseEpochSecond(CharSequence text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        int year = 0, month = 0, day = 0, hour = 0, minute = 0, second = 0;
+        int field = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? text.charAt(i) : '\0';
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (++digits > (field == 0 ? 4 : 2)) {
+                    return INVALID;
+                }
+                continue;
+            }
+            if (digits == 0) {
+                // 日期与时间之间允许有多个空格
+                if (field == 3 && c == ' ') {
+                    continue;
+                }
+                return INVALID;
+            }
+
+            switch (field) {
+                case 0 -> {
+                    if (digits != 4) {
+                        return INVALID;
+                    }
+                    year = value;
+                }
+                case 1 -> month = value;
+                case 2 -> day = value;
+                case 3 -> hour = value;
+                case 4 -> minute = value;
+                default -> second = value;
+            }
+            field++;
+            value = 0;
+            digits = 0;
+            if (i == end) {
+                break;
+            }
+
+            boolean validSeparator = switch (field) {
+                case 1, 2 -> c == '-' || c == '/' || c == '.';
+                case 3 -> c == ' ' || c == 'T';
+                case 4, 5 -> c == ':';
+                default -> false;
+            };
+            if (!validSeparator) {
+                return INVALID;
+            }
+        }
+
+        if (field != 3 && field != 5 && field != 6) {
+            return INVALID;
+        }
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            return INVALID;
+        }
+        return epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600L + minute * 60L + second;
+    }
+
+    /**
+     * 解析 yyyy-MM-dd 日期为纪元日，null 或空串返回 null。
+     *
+     * @throws IllegalArgumentException 日期格式不正确
+     */
+    public static Integer parseEpochDayOrNull(String date) {
+        if (date == null || date.isEmpty()) {
+            return null;
+        }
+        long epochSecond = parseEpochSecond(date);
+        if (epochSecond == INVALID) {
+            throw new IllegalArgumentException("日期格式不正确: " + date);
+        }
+        return toEpochDay(epochSecond);
+    }
+
+    public static int toEpochDay(long epochSecond) {
+        return (int) Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+    }
+
+    public static String formatDate(int epochDay) {
+        return LocalDate.ofEpochDay(epochDay).toString();
+    }
+
+    public static LocalDateTime toLocalDateTime(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    public static String formatDateTime(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC).format(DATE_TIME_FORMATTER);
+    }
+
+    // 公历日期转纪元日，算法见 Howard Hinnant 的 days_from_civil
+    static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}
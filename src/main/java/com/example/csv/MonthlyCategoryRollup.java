@@ -0,0 +1,84 @@
+package com.example.csv;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * 按月、按分类的支出汇总，stat_month 为当月第一天。用于按整月筛选的分类统计。
+ */
+@Entity
+@Table(name = "csv_monthly_category_rollup")
+@IdClass(MonthlyCategoryRollup.Key.class)
+public class MonthlyCategoryRollup {
+    @Id
+    @Column(name = "stat_month")
+    private LocalDate statMonth;
+
+    @Id
+    private String category;
+
+    @Column(precision = 19, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "expense_count")
+    private Long count;
+
+    public MonthlyCategoryRollup() {
+    }
+
+    public LocalDate getStatMonth() {
+        return statMonth;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public Long getCount() {
+        return count;
+    }
+
+    public static class Key implements Serializable {
+        private LocalDate statMonth;
+        private String category;
+
+        public Key() {
+        }
+
+        public Key(LocalDate statMonth, String category) {
+            this.statMonth = statMonth;
+            this.category = category;
+        }
+
+        public LocalDate getStatMonth() {
+            return statMonth;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key key)) {
+                return false;
+            }
+            return Objects.equals(statMonth, key.statMonth) && Objects.equals(category, key.category);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(statMonth, category);
+        }
+    }
+}
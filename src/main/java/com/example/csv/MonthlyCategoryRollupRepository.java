@@ -0,0 +1,23 @@
+package com.example.csv;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface MonthlyCategoryRollupRepository
+        extends JpaRepository<MonthlyCategoryRollup, MonthlyCategoryRollup.Key> {
+
+    // 月份范围两端都包含，结果按支出金额从高到低排序
+    @Query("SELECT m.category AS category, SUM(m.amount) AS amount, SUM(m.count) AS count " +
+            "FROM MonthlyCategoryRollup m " +
+            "WHERE m.statMonth >= :startMonth AND m.statMonth <= :endMonth " +
+            "GROUP BY m.category " +
+            "ORDER BY SUM(m.amount) DESC")
+    List<CategoryAmountSummary> sumByCategory(@Param("startMonth") LocalDate startMonth,
+                                              @Param("endMonth") LocalDate endMonth);
+}
@@ -0,0 +1,343 @@
+package com.example.csv;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 多线程解析CSV输入流，按文件顺序逐条返回记录。
+ * <p>
+ * 当前线程顺序读取输入，切成以记录边界结尾的数据块：扫描字节时按与 {@link CsvTokenizer} 相同的规则判断是否在引号内，
+ * 只在引号外的换行符处切分，因此引号内的换行不会把一条记录切成两半。UTF-8 多字节字符中不会出现
+ * '"'、'\r' 和 '\n' 这几个字节，按字节扫描是安全的。
+ * <p>
+ * 每个数据块交给线程池解析为 {@link CsvData}（包括时间、金额解析和行哈希计算），结果按提交顺序取回。
+ * 同时在途的数据块数量有上限，内存占用与文件大小无关。
+ * <p>
+ * 输入可以由多个CSV文件依次组成（如 ZIP 压缩包中的各个文件），每个文件有自己的表头；
+ * 数据块记录所属文件的列映射，不同文件的数据块同样并行解析。
+ */
+public class ParallelCsvReader implements CsvRowSource {
+
+    // 单条记录的上限；超过时多半是引号没有闭合，避免把整个文件读入一个数据块
+    static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * 依次提供要解析的各个CSV文件。
+     */
+    public interface Inputs extends Closeable {
+
+        /**
+         * @return 下一个文件的内容，没有更多文件时返回 null；返回下一个文件时上一个文件不再被读取
+         */
+        InputStream next() throws IOException;
+    }
+
+    private final Inputs inputs;
+    private final ExecutorService executor;
+    private final int blockSize;
+    private final int maxPendingBlocks;
+
+    private final Deque<Future<ParsedBlock>> pendingBlocks = new ArrayDeque<>();
+
+    // 当前正在读取的文件及其表头
+    private InputStream inputStream;
+    private CsvColumns columns;
+    // 上一个数据块切分点之后、尚未提交的字节
+    private byte[] carry = new byte[0];
+    private int carryLength;
+    private boolean inputExhausted;
+    private long nextLineNumber = 1;
+
+    private List<CsvData> currentRows = List.of();
+    private int currentIndex;
+    private long skippedCount;
+
+    public ParallelCsvReader(InputStream inputStream, ExecutorService executor, int blockSize, int maxPendingBlocks)
+            throws IOException {
+        this(singleInput(inputStream), executor, blockSize, maxPendingBlocks);
+    }
+
+    /**
+     * @throws IllegalArgumentException 所有文件都为空
+     */
+    public ParallelCsvReader(Inputs inputs, ExecutorService executor, int blockSize, int maxPendingBlocks)
+            throws IOException {
+        this.inputs = inputs;
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.maxPendingBlocks = maxPendingBlocks;
+
+        if (!openNextInput()) {
+            throw new IllegalArgumentException("CSV文件为空");
+        }
+    }
+
+    private static Inputs singleInput(InputStream inputStream) {
+        return new Inputs() {
+            private boolean returned;
+
+            @Override
+            public InputStream next() {
+                if (returned) {
+                    return null;
+                }
+                returned = true;
+                return inputStream;
+            }
+
+            @Override
+            public void close() throws IOException {
+                inputStream.close();
+            }
+        };
+    }
+
+    /**
+     * 打开下一个非空文件：表头在当前线程解析，剩余部分作为该文件的第一个数据块。
+     *
+     * @return 没有更多文件时返回 false
+     */
+    private boolean openNextInput() throws IOException {
+        while ((inputStream = inputs.next()) != null) {
+            nextLineNumber = 1;
+            Block first = readBlock();
+            if (first == null) {
+                continue;
+            }
+
+            int headerEnd = recordEnd(first.data, first.length, true);
+            int headerLength = headerEnd < 0 ? first.length : headerEnd;
+            CsvTokenizer header = tokenizer(first.data, 0, headerLength, 1);
+            header.nextRecord();
+            columns = new CsvColumns(header);
+
+            if (headerLength < first.length) {
+                long firstLineNumber = 1 + countLines(first.data, 0, headerLength);
+                submit(new Block(first.data, headerLength, first.length - headerLength, firstLineNumber, columns));
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public CsvData next() throws IOException {
+        while (currentIndex == currentRows.size()) {
+            fillPendingBlocks();
+            Future<ParsedBlock> next = pendingBlocks.poll();
+            if (next == null) {
+                return null;
+            }
+            ParsedBlock block = await(next);
+            currentRows = block.rows();
+            currentIndex = 0;
+            skippedCount += block.skippedCount();
+        }
+        CsvData csvData = currentRows.get(currentIndex);
+        // 已取走的行不再被数据块引用，可以尽早回收
+        currentRows.set(currentIndex++, null);
+        return csvData;
+    }
+
+    @Override
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<ParsedBlock> pending : pendingBlocks) {
+            pending.cancel(true);
+        }
+        pendingBlocks.clear();
+        inputs.close();
+    }
+
+    private void fillPendingBlocks() throws IOException {
+        while (pendingBlocks.size() < maxPendingBlocks && !inputExhausted) {
+            Block block = readBlock();
+            if (block != null) {
+                submit(block);
+            } else if (!openNextInput()) {
+                inputExhausted = true;
+            }
+        }
+    }
+
+    private void submit(Block block) {
+        pendingBlocks.add(executor.submit(() -> parse(block)));
+    }
+
+    private ParsedBlock parse(Block block) throws IOException {
+        CsvTokenizer tokenizer = tokenizer(block.data, block.offset, block.length, block.firstLineNumber);
+        List<CsvData> rows = new ArrayList<>();
+        long skipped = 0;
+        while (tokenizer.nextRecord()) {
+            if (tokenizer.isBlankRecord()) {
+                skipped++;
+            } else {
+                rows.add(block.columns.toCsvData(tokenizer));
+            }
+        }
+        return new ParsedBlock(rows, skipped);
+    }
+
+    private static CsvTokenizer tokenizer(byte[] data, int offset, int length, long firstLineNumber) {
+        return new CsvTokenizer(new InputStreamReader(
+                new ByteArrayInputStream(data, offset, length), StandardCharsets.UTF_8),
+                Math.max(1, Math.min(length, 64 * 1024)), firstLineNumber);
+    }
+
+    /**
+     * 读取下一个以记录边界结尾的数据块；单条记录超过块大小时数据块会相应扩大，最多到 {@link #MAX_RECORD_BYTES}。
+     *
+     * @throws IllegalArgumentException 单条记录超过 {@link #MAX_RECORD_BYTES}
+     *
+     * @return 输入结束且没有剩余数据时返回 null
+     */
+    private Block readBlock() throws IOException {
+        byte[] data = Arrays.copyOf(carry, Math.max(blockSize, carryLength * 2));
+        int length = carryLength;
+
+        while (true) {
+            int read = inputStream.readNBytes(data, length, data.length - length);
+            length += read;
+            if (length < data.length) {
+                // 输入已读完，剩余部分就是最后一个数据块
+                carry = new byte[0];
+                carryLength = 0;
+                return length == 0 ? null : newBlock(data, length);
+            }
+
+            int end = recordEnd(data, length, false);
+            if (end > 0) {
+                carryLength = length - end;
+                carry = Arrays.copyOfRange(data, end, length);
+                return newBlock(data, end);
+            }
+            if (length >= MAX_RECORD_BYTES) {
+                throw new IllegalArgumentException("第" + nextLineNumber + "行开始的记录超过"
+                        + (MAX_RECORD_BYTES >> 20) + "MB，请检查引号是否闭合");
+            }
+            data = Arrays.copyOf(data, length * 2);
+        }
+    }
+
+    private Block newBlock(byte[] data, int length) {
+        Block block = new Block(data, 0, length, nextLineNumber, columns);
+        nextLineNumber += countLines(data, 0, length);
+        return block;
+    }
+
+    /**
+     * 从数据开头（位于记录边界）扫描，返回引号外的换行符之后的位置。
+     * <p>
+     * 引号的处理与 {@link CsvTokenizer} 一致：只有字段中此前只有空白时，引号才是开引号，
+     * 不在字段开头的引号（如 12" pizza）是普通字符；引号内的 "" 是转义的引号。
+     * 换行符同样支持 \n、\r\n 和单独的 \r；位于数据末尾的 \r 后面可能还有 \n，不在此处切分。
+     *
+     * @param first true 返回第一个这样的位置，false 返回最后一个
+     * @return 没有找到时返回 -1
+     */
+    static int recordEnd(byte[] data, int length, boolean first) {
+        boolean quoted = false;
+        // 引号内遇到的引号：后面再跟一个引号是转义，否则是闭引号
+        boolean quoteInQuoted = false;
+        // 当前字段到目前为止是否只有空白，开引号只能出现在这种位置
+        boolean fieldBlank = true;
+        int end = -1;
+        for (int i = 0; i < length; i++) {
+            byte b = data[i];
+            if (quoted) {
+                if (b == '"') {
+                    quoted = false;
+                    quoteInQuoted = true;
+                } else if ((b & 0xff) > ' ') {
+                    fieldBlank = false;
+                }
+                continue;
+            }
+
+            boolean afterQuote = quoteInQuoted;
+            quoteInQuoted = false;
+            if (b == ',') {
+                fieldBlank = true;
+            } else if (b == '\n' || b == '\r') {
+                if (b == '\r') {
+                    if (i + 1 == length) {
+                        break;
+                    }
+                    if (data[i + 1] == '\n') {
+                        i++;
+                    }
+                }
+                end = i + 1;
+                if (first) {
+                    return end;
+                }
+                fieldBlank = true;
+            } else if (b == '"' && afterQuote) {
+                // 引号内的 ""，回到引号内
+                quoted = true;
+                fieldBlank = false;
+            } else if (b == '"' && fieldBlank) {
+                quoted = true;
+            } else if ((b & 0xff) > ' ') {
+                fieldBlank = false;
+            }
+        }
+        return end;
+    }
+
+    // 与 CsvTokenizer 的行号一致：\n、\r\n 和单独的 \r 各算一行
+    private static long countLines(byte[] data, int offset, int length) {
+        long lines = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (data[i] == '\n' || (data[i] == '\r' && (i + 1 == end || data[i + 1] != '\n'))) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static ParsedBlock await(Future<ParsedBlock> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("CSV解析被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private record Block(byte[] data, int offset, int length, long firstLineNumber, CsvColumns columns) {
+    }
+
+    private record ParsedBlock(List<CsvData> rows, long skippedCount) {
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.csv;
+
+import java.util.Locale;
+
+/**
+ * 聚合时可选的分组维度，取快照中对应列的字典编号。
+ */
+public enum PivotDimension {
+    CATEGORY("category") {
+        @Override
+        int valueId(LedgerSnapshot snapshot, int row) {
+            return snapshot.categoryId(row);
+        }
+
+        @Override
+        int valueCount(LedgerSnapshot snapshot) {
+            return snapshot.categoryCount();
+        }
+
+        @Override
+        String value(LedgerSnapshot snapshot, int id) {
+            return snapshot.category(id);
+        }
+    },
+    ACCOUNT("account") {
+        @Override
+        int valueId(LedgerSnapshot snapshot, int row) {
+            return snapshot.accountId(row);
+        }
+
+        @Override
+        int valueCount(LedgerSnapshot snapshot) {
+            return snapshot.accountCount();
+        }
+
+        @Override
+        String value(LedgerSnapshot snapshot, int id) {
+            return snapshot.account(id);
+        }
+    },
+    BOOK("book") {
+        @Override
+        int valueId(LedgerSnapshot snapshot, int row) {
+            return snapshot.bookId(row);
+        }
+
+        @Override
+        int valueCount(LedgerSnapshot snapshot) {
+            return snapshot.bookCount();
+        }
+
+        @Override
+        String value(LedgerSnapshot snapshot, int id) {
+            return snapshot.book(id);
+        }
+    };
+
+    private final String fieldName;
+
+    PivotDimension(String fieldName) {
+        this.fieldName = fieldName;
+    }
+
+    /**
+     * @return 结果中该维度的字段名，与明细记录的字段名一致
+     */
+    public String fieldName() {
+        return fieldName;
+    }
+
+    abstract int valueId(LedgerSnapshot snapshot, int row);
+
+    abstract int valueCount(LedgerSnapshot snapshot);
+
+    abstract String value(LedgerSnapshot snapshot, int id);
+
+    /**
+     * @return 参数为空时返回 null，表示不分组
+     */
+    public static PivotDimension parseOrNull(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不支持的分组维度: " + value);
+        }
+    }
+}
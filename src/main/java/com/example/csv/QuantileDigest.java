@@ -0,0 +1,202 @@
+package com.example.csv;
+
+import java.util.Arrays;
+
+/**
+ * 流式分位数估计（合并式 t-digest）。
+ * <p>
+ * 数据先写入缓冲区，缓冲区满时与已有质心一起按值排序，再按 k1 尺度函数贪心合并：
+ * 靠近两端（q 接近 0 或 1）的质心只能容纳很少的数据，中间的质心可以更大，
+ * 因此 p99 这类尾部分位数的误差远小于均匀分桶。质心数量只与压缩参数有关，与数据量无关。
+ * 两个摘要可以合并，合并时只读取另一个摘要，不会修改它。
+ */
+public final class QuantileDigest {
+
+    private final double compression;
+
+    private double[] means = new double[0];
+    private long[] weights = new long[0];
+    private int centroidCount;
+
+    // 构建时才需要的缓冲区，compress() 后释放；摘要构建完成后只保留质心
+    private double[] bufferValues;
+    private long[] bufferWeights;
+    private int bufferCount;
+
+    private long totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param compression 压缩参数，越大越精确，质心数量大约为该值的一半到一倍
+     */
+    public QuantileDigest(double compression) {
+        this.compression = compression;
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    public void add(double value, long weight) {
+        if (bufferValues == null) {
+            int bufferSize = (int) (compression * 5);
+            bufferValues = new double[bufferSize];
+            bufferWeights = new long[bufferSize];
+        } else if (bufferCount == bufferValues.length) {
+            flush();
+        }
+        bufferValues[bufferCount] = value;
+        bufferWeights[bufferCount] = weight;
+        bufferCount++;
+        totalWeight += weight;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * 把另一个摘要的全部数据并入本摘要。
+     */
+    public void merge(QuantileDigest other) {
+        for (int i = 0; i < other.centroidCount; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        for (int i = 0; i < other.bufferCount; i++) {
+            add(other.bufferValues[i], other.bufferWeights[i]);
+        }
+        // 质心的均值不一定等于原始数据的最值
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long count() {
+        return totalWeight;
+    }
+
+    /**
+     * @param q 0 到 1 之间的分位点
+     * @return 估计的分位数，没有数据时返回 NaN
+     */
+    public double quantile(double q) {
+        compress();
+        if (centroidCount == 0) {
+            return Double.NaN;
+        }
+        if (centroidCount == 1) {
+            return means[0];
+        }
+
+        double index = q * totalWeight;
+        // 第一个质心中心之前：在最小值和第一个质心之间插值
+        double firstCenter = weights[0] / 2.0;
+        if (index < firstCenter) {
+            return min + (means[0] - min) * index / firstCenter;
+        }
+        // 在相邻两个质心的中心之间线性插值
+        double center = firstCenter;
+        for (int i = 0; i < centroidCount - 1; i++) {
+            double nextCenter = center + (weights[i] + weights[i + 1]) / 2.0;
+            if (index <= nextCenter) {
+                double t = (index - center) / (nextCenter - center);
+                return means[i] + t * (means[i + 1] - means[i]);
+            }
+            center = nextCenter;
+        }
+        double rest = totalWeight - center;
+        double t = rest == 0 ? 1 : Math.min(1, (index - center) / rest);
+        return means[centroidCount - 1] + t * (max - means[centroidCount - 1]);
+    }
+
+    /**
+     * 把缓冲区中的数据合并进质心并释放缓冲区。构建完成后调用一次，之后只读的并发访问不会再修改内部状态；
+     * 之后如果继续添加数据，缓冲区会重新分配。
+     */
+    public void compress() {
+        flush();
+        bufferValues = null;
+        bufferWeights = null;
+    }
+
+    private void flush() {
+        if (bufferCount == 0) {
+            return;
+        }
+        int n = centroidCount + bufferCount;
+        double[] values = Arrays.copyOf(means, n);
+        long[] valueWeights = Arrays.copyOf(weights, n);
+        System.arraycopy(bufferValues, 0, values, centroidCount, bufferCount);
+        System.arraycopy(bufferWeights, 0, valueWeights, centroidCount, bufferCount);
+        int[] order = sortedOrder(values, n);
+
+        double[] mergedMeans = new double[n];
+        long[] mergedWeights = new long[n];
+        int merged = 0;
+        double normalizer = compression / (2 * Math.PI);
+        long weightSoFar = 0;
+        double currentMean = values[order[0]];
+        long currentWeight = valueWeights[order[0]];
+        double kLeft = scale(0, normalizer);
+        for (int i = 1; i < n; i++) {
+            double value = values[order[i]];
+            long weight = valueWeights[order[i]];
+            long proposed = currentWeight + weight;
+            double q = (double) (weightSoFar + proposed) / totalWeight;
+            if (scale(q, normalizer) - kLeft <= 1) {
+                currentMean += (value - currentMean) * weight / proposed;
+                currentWeight = proposed;
+            } else {
+                mergedMeans[merged] = currentMean;
+                mergedWeights[merged] = currentWeight;
+                merged++;
+                weightSoFar += currentWeight;
+                kLeft = scale((double) weightSoFar / totalWeight, normalizer);
+                currentMean = value;
+                currentWeight = weight;
+            }
+        }
+        mergedMeans[merged] = currentMean;
+        mergedWeights[merged] = currentWeight;
+        merged++;
+
+        means = Arrays.copyOf(mergedMeans, merged);
+        weights = Arrays.copyOf(mergedWeights, merged);
+        centroidCount = merged;
+        bufferCount = 0;
+    }
+
+    // k1 尺度函数：q 接近两端时斜率变大，允许的质心更小
+    private static double scale(double q, double normalizer) {
+        return normalizer * Math.asin(2 * Math.min(1, Math.max(0, q)) - 1);
+    }
+
+    // 按值做自底向上归并排序，返回排序后的下标
+    private static int[] sortedOrder(double[] values, int n) {
+        int[] source = new int[n];
+        for (int i = 0; i < n; i++) {
+            source[i] = i;
+        }
+        int[] target = new int[n];
+        for (int width = 1; width < n; width <<= 1) {
+            for (int low = 0; low < n; low += width << 1) {
+                int middle = Math.min(low + width, n);
+                int high = Math.min(low + (width << 1), n);
+                int i = low;
+                int j = middle;
+                int k = low;
+                while (i < middle && j < high) {
+                    target[k++] = values[source[j]] < values[source[i]] ? source[j++] : source[i++];
+                }
+                while (i < middle) {
+                    target[k++] = source[i++];
+                }
+                while (j < high) {
+                    target[k++] = source[j++];
+                }
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        return source;
+    }
+}
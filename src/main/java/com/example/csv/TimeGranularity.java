@@ -0,0 +1,86 @@
+package com.example.csv;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.Locale;
+
+/**
+ * 聚合时的时间粒度。每个时间段用其第一天的纪元日表示，周从周一开始（ISO 周）。
+ */
+public enum TimeGranularity {
+    DAY {
+        @Override
+        LocalDate bucketStart(LocalDate date) {
+            return date;
+        }
+
+        @Override
+        String label(LocalDate start) {
+            return start.toString();
+        }
+    },
+    WEEK {
+        @Override
+        LocalDate bucketStart(LocalDate date) {
+            return date.minusDays(date.getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue());
+        }
+
+        @Override
+        String label(LocalDate start) {
+            return String.format("%d-W%02d", start.get(IsoFields.WEEK_BASED_YEAR),
+                    start.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+        }
+    },
+    MONTH {
+        @Override
+        LocalDate bucketStart(LocalDate date) {
+            return date.withDayOfMonth(1);
+        }
+
+        @Override
+        String label(LocalDate start) {
+            return String.format("%d-%02d", start.getYear(), start.getMonthValue());
+        }
+    },
+    QUARTER {
+        @Override
+        LocalDate bucketStart(LocalDate date) {
+            return LocalDate.of(date.getYear(), (date.getMonthValue() - 1) / 3 * 3 + 1, 1);
+        }
+
+        @Override
+        String label(LocalDate start) {
+            return start.getYear() + "-Q" + ((start.getMonthValue() - 1) / 3 + 1);
+        }
+    },
+    YEAR {
+        @Override
+        LocalDate bucketStart(LocalDate date) {
+            return date.withDayOfYear(1);
+        }
+
+        @Override
+        String label(LocalDate start) {
+            return String.valueOf(start.getYear());
+        }
+    };
+
+    abstract LocalDate bucketStart(LocalDate date);
+
+    /**
+     * @return 时间段的显示名称，如 2024-03-01、2024-W09、2024-03、2024-Q1、2024
+     */
+    abstract String label(LocalDate start);
+
+    public static TimeGranularity parse(String value) {
+        if (value == null || value.isBlank()) {
+            return DAY;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不支持的时间粒度: " + value);
+        }
+    }
+}
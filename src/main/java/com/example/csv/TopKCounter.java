@@ -0,0 +1,98 @@
+package com.example.csv;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 出现次数最多的前 K 个值（Space-Saving 算法）。
+ * <p>
+ * 最多跟踪 capacity 个值；已满时新值替换计数最小的值，并继承它的计数作为误差上界。
+ * 真实次数在 [count - error, count] 之间，出现次数超过总数 1/capacity 的值一定会被保留。
+ * 两个计数器可以合并：相同的值计数相加；只在一方出现的值，另一方已满时可能被它淘汰过，
+ * 按另一方的最小计数补上计数和误差，保证合并后真实次数仍在 [count - error, count] 之间。最后保留计数最大的 capacity 个。
+ */
+public final class TopKCounter {
+
+    /**
+     * @param error 计数可能多算的次数
+     */
+    public record Entry(String value, long count, long error) {
+    }
+
+    private final int capacity;
+    // 每个值对应 {计数, 误差}
+    private final Map<String, long[]> counters = new HashMap<>();
+
+    public TopKCounter(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void add(String value) {
+        long[] counter = counters.get(value);
+        if (counter != null) {
+            counter[0]++;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(value, new long[]{1, 0});
+            return;
+        }
+        long[] minimum = counters.remove(minimumValue());
+        counters.put(value, new long[]{minimum[0] + 1, minimum[0]});
+    }
+
+    public void merge(TopKCounter other) {
+        // 未满的计数器没有淘汰过任何值，不在其中的值真实次数就是 0
+        long thisMinimum = minimumCount();
+        long otherMinimum = other.minimumCount();
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            if (!other.counters.containsKey(entry.getKey())) {
+                entry.getValue()[0] += otherMinimum;
+                entry.getValue()[1] += otherMinimum;
+            }
+        }
+        for (Map.Entry<String, long[]> entry : other.counters.entrySet()) {
+            long[] counter = counters.get(entry.getKey());
+            if (counter == null) {
+                counters.put(entry.getKey(), new long[]{
+                        entry.getValue()[0] + thisMinimum, entry.getValue()[1] + thisMinimum});
+            } else {
+                counter[0] += entry.getValue()[0];
+                counter[1] += entry.getValue()[1];
+            }
+        }
+        while (counters.size() > capacity) {
+            counters.remove(minimumValue());
+        }
+    }
+
+    /**
+     * @return 按计数从高到低排列的前 limit 个值
+     */
+    public List<Entry> top(int limit) {
+        List<Entry> entries = new ArrayList<>(counters.size());
+        counters.forEach((value, counter) -> entries.add(new Entry(value, counter[0], counter[1])));
+        entries.sort((a, b) -> Long.compare(b.count(), a.count()));
+        return entries.subList(0, Math.min(limit, entries.size()));
+    }
+
+    // 未满时为 0，否则为被跟踪的值中最小的计数，即未被跟踪的值可能的最大次数
+    private long minimumCount() {
+        return counters.size() < capacity ? 0 : counters.get(minimumValue())[0];
+    }
+
+    // capacity 通常只有几十，直接线性查找计数最小的值
+    private String minimumValue() {
+        String minimum = null;
+        long minimumCount = Long.MAX_VALUE;
+        for (Map.Entry<String, long[]> entry : counters.entrySet()) {
+            if (entry.getValue()[0] < minimumCount) {
+                minimum = entry.getKey();
+                minimumCount = entry.getValue()[0];
+            }
+        }
+        return minimum;
+    }
+}
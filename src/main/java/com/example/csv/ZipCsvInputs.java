@@ -0,0 +1,58 @@
+package com.example.csv;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 依次读取 ZIP 压缩包中的CSV文件，边读边解压，不落盘也不把整个条目读进内存。
+ * 目录、非 .csv 文件和 macOS 生成的 __MACOSX 元数据会被跳过。
+ */
+class ZipCsvInputs implements ParallelCsvReader.Inputs {
+
+    private static final String CSV_FILE_EXTENSION = ".csv";
+    private static final String MACOS_METADATA_PREFIX = "__MACOSX/";
+    // 没有 UTF-8 标记的文件名按 GBK 解码（中文 Windows 资源管理器创建的压缩包）
+    private static final Charset FALLBACK_NAME_CHARSET = Charset.forName("GBK");
+
+    private final ZipInputStream zipInputStream;
+    private int entryCount;
+
+    ZipCsvInputs(InputStream inputStream) {
+        this.zipInputStream = new ZipInputStream(inputStream, FALLBACK_NAME_CHARSET);
+    }
+
+    /**
+     * @throws IllegalArgumentException 压缩包中没有CSV文件
+     */
+    @Override
+    public InputStream next() throws IOException {
+        ZipEntry entry;
+        while ((entry = zipInputStream.getNextEntry()) != null) {
+            String name = entry.getName();
+            if (!entry.isDirectory() && !name.startsWith(MACOS_METADATA_PREFIX)
+                    && name.toLowerCase(Locale.ROOT).endsWith(CSV_FILE_EXTENSION)) {
+                entryCount++;
+                // 关闭条目由 getNextEntry 负责，调用方关闭时不能关掉整个压缩包
+                return new FilterInputStream(zipInputStream) {
+                    @Override
+                    public void close() {
+                    }
+                };
+            }
+        }
+        if (entryCount == 0) {
+            throw new IllegalArgumentException("压缩包中没有CSV文件");
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipInputStream.close();
+    }
+}
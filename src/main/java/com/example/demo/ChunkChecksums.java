@@ -0,0 +1,26 @@
+package com.example.demo;
+
+import java.util.zip.Checksum;
+
+/**
+ * 分片 CRC32C 的格式化和校验。客户端可以随分片提交 chunkCrc32c（8 位十六进制），与服务端写入时计算的结果比较。
+ */
+final class ChunkChecksums {
+
+    private ChunkChecksums() {
+    }
+
+    static String toHex(Checksum checksum) {
+        return String.format("%08x", checksum.getValue());
+    }
+
+    /**
+     * @throws IllegalArgumentException expected 不为空且与 actual 不一致
+     */
+    static void verify(int chunkIndex, String expected, String actual) {
+        if (expected != null && !expected.isBlank() && !expected.trim().equalsIgnoreCase(actual)) {
+            throw new IllegalArgumentException(String.format("分片 %d 校验失败：CRC32C 应为 %s，实际为 %s",
+                    chunkIndex, expected.trim(), actual));
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.demo;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.slf4j.Logger;
@@ -7,17 +9,37 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
 
 // 将MergeRequest类定义在Controller类外部
 class MergeRequest {
     private String fileType;
     private String fileName;
     private int totalChunks;
+    // 预分配模式上传时的 identifier，为空时按 .partN 分片合并
+    private String identifier;
+    // 客户端计算的整个文件的 SHA-256，不为空时合并前校验
+    private String sha256;
+    // /chunk-upload/init 返回的上传会话，为空时使用共享的临时目录
+    private String sessionId;
 
     // Constructors
     public MergeRequest() {}
@@ -53,12 +75,39 @@ class MergeRequest {
         this.totalChunks = totalChunks;
     }
 
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public void setIdentifier(String identifier) {
+        this.identifier = identifier;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
     @Override
     public String toString() {
         return "MergeRequest{" +
                 "fileType='" + fileType + '\'' +
                 ", fileName='" + fileName + '\'' +
                 ", totalChunks=" + totalChunks +
+                ", identifier='" + identifier + '\'' +
+                ", sha256='" + sha256 + '\'' +
+                ", sessionId='" + sessionId + '\'' +
                 '}';
     }
 }
@@ -69,6 +118,82 @@ public class ChunkUploadController {
 
     private static final Logger logger = LoggerFactory.getLogger(ChunkUploadController.class);
 
+    private static final String BASE_DIR = "D:/软件/编程/Code/后台/server"; // 项目基础目录
+
+    // 预分配模式中正在上传的文件，按数据文件路径索引；服务重启后从磁盘上的上传状态恢复
+    private final Map<Path, PreallocatedUpload> preallocatedUploads = new ConcurrentHashMap<>();
+
+    // .partN 分片上传时按顺序计算的 SHA-256，按临时目录中的文件名索引
+    private final Map<Path, SequentialSha256> chunkHashes = new ConcurrentHashMap<>();
+
+    // 打开或创建预分配上传时使用，同一数据文件只打开一次，其他上传不受影响
+    private final StripedLocks uploadLocks = new StripedLocks(64);
+
+    // 合并时使用，按会话（没有会话时按文件）串行执行
+    private final StripedLocks mergeLocks = new StripedLocks(64);
+
+    private final ContentHashIndex contentHashIndex;
+
+    // 超过该时长没有任何请求的上传会话视为已放弃，由 sweepExpiredSessions 删除
+    private final long sessionTtlMillis;
+
+    // 使用构造函数注入替代字段注入
+    public ChunkUploadController(ContentHashIndex contentHashIndex,
+                                 @Value("${upload.session.ttl-hours:24}") long sessionTtlHours) {
+        this.contentHashIndex = contentHashIndex;
+        this.sessionTtlMillis = TimeUnit.HOURS.toMillis(sessionTtlHours);
+    }
+
+    /**
+     * 上传前按内容哈希查询是否已有相同的文件，已有时客户端不需要上传，直接使用返回的 path（秒传）。
+     */
+    @PostMapping("/upload/precheck")
+    public Map<String, Object> precheck(
+            @RequestParam("sha256") String sha256,
+            @RequestParam("fileSize") long fileSize) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            Optional<ContentFile> existing = contentHashIndex.find(sha256, fileSize);
+            result.put("success", true);
+            result.put("exists", existing.isPresent());
+            existing.ifPresent(file -> putExistingFile(file, result));
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", "查询文件失败: " + e.getMessage());
+            logger.error("Content hash lookup failed", e);
+        }
+        return result;
+    }
+
+    /**
+     * 开始一次分片上传，返回服务端生成的 sessionId。之后的分片和合并请求带上 sessionId 时，
+     * 分片保存在该会话独立的目录中，同名文件的并发上传不会互相覆盖。
+     */
+    @PostMapping("/chunk-upload/init")
+    public Map<String, Object> initUpload(@RequestParam("fileType") String fileType) {
+        Map<String, Object> result = new HashMap<>();
+
+        String tempDir = tempDir(fileType);
+        if (tempDir == null) {
+            result.put("success", false);
+            result.put("error", "不支持的文件类型");
+            return result;
+        }
+
+        String sessionId = UUID.randomUUID().toString();
+        try {
+            Files.createDirectories(sessionDir(tempDir, sessionId));
+            result.put("success", true);
+            result.put("sessionId", sessionId);
+            logger.info("Created upload session {}", sessionId);
+        } catch (IOException e) {
+            result.put("success", false);
+            result.put("error", "创建上传会话失败: " + e.getMessage());
+            logger.error("Create upload session failed", e);
+        }
+        return result;
+    }
+
     @PostMapping("/chunk-upload")
     public Map<String, Object> chunkUpload(
             @RequestParam("chunk") MultipartFile chunk,
@@ -78,7 +203,10 @@ public class ChunkUploadController {
             @RequestParam(value = "totalChunks", required = false) String totalChunks,
             @RequestParam(value = "fileSize", required = false) Long fileSize,
             @RequestParam(value = "identifier", required = false) String identifier,
-            @RequestParam(value = "relativePath", required = false) String relativePath) {
+            @RequestParam(value = "relativePath", required = false) String relativePath,
+            @RequestParam(value = "chunkSize", required = false) Long chunkSize,
+            @RequestParam(value = "chunkCrc32c", required = false) String chunkCrc32c,
+            @RequestParam(value = "sessionId", required = false) String sessionId) {
 
         Map<String, Object> result = new HashMap<>();
 
@@ -86,7 +214,7 @@ public class ChunkUploadController {
                 fileName, fileType, chunkIndex);
 
         // 定义基础目录和临时目录
-        String baseTempDir = "D:/软件/编程/Code/后台/server"; // 项目基础目录
+        String baseTempDir = BASE_DIR;
         String tempDir;
 
         // 根据文件类型设置临时目录
@@ -100,20 +228,39 @@ public class ChunkUploadController {
             return result;
         }
 
+        if (sessionId != null) {
+            // 会话目录由 /chunk-upload/init 创建，合并成功后删除
+            Path sessionDir = existingSessionDir(tempDir, sessionId, result);
+            if (sessionDir == null) {
+                return result;
+            }
+            tempDir = sessionDir.toString();
+            if (identifier == null) {
+                identifier = sessionId;
+            }
+        }
+
         // 创建临时目录（如果不存在）
         File dir = new File(tempDir);
         if (!dir.exists()) {
             dir.mkdirs();
         }
 
+        // 提供了 identifier、fileSize 和 chunkSize 时直接写入预分配的目标文件，合并时只需重命名
+        if (identifier != null && fileSize != null && chunkSize != null) {
+            return writePreallocatedChunk(chunk, tempDir, fileName, chunkIndex, fileSize, chunkSize, identifier,
+                    chunkCrc32c, result);
+        }
+
         // 构建分片文件名
         String chunkFileName = fileName + ".part" + chunkIndex;
         Path destinationPath = Paths.get(tempDir, chunkFileName);
 
-        // 保存分片文件
+        // 保存分片文件，同时计算分片的 CRC32C 和整个文件的 SHA-256
         try {
-            chunk.transferTo(destinationPath);
+            String crc32c = writeChunkFile(chunk, tempDir, fileName, chunkIndex, destinationPath, chunkCrc32c);
             result.put("success", true);
+            result.put("crc32c", crc32c);
             result.put("fileName", fileName);
             result.put("chunkIndex", chunkIndex);
             result.put("totalChunks", totalChunks);
@@ -121,6 +268,10 @@ public class ChunkUploadController {
             result.put("identifier", identifier);
             result.put("relativePath", relativePath);
             result.put("path", destinationPath.toString().replace("\\", "/"));
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+            logger.warn("Rejected chunk {} of {}: {}", chunkIndex, fileName, e.getMessage());
         } catch (Exception e) {
             result.put("success", false);
             result.put("error", "分片保存失败: " + e.getMessage());
@@ -130,12 +281,69 @@ public class ChunkUploadController {
         return result;
     }
 
+    /**
+     * 查询预分配模式上传的进度。客户端断线或服务重启后只需补传 missingRanges 中的分片。
+     */
+    @GetMapping("/chunk-upload/status")
+    public Map<String, Object> uploadStatus(
+            @RequestParam("fileType") String fileType,
+            @RequestParam(value = "identifier", required = false) String identifier,
+            @RequestParam(value = "sessionId", required = false) String sessionId) {
+        Map<String, Object> result = new HashMap<>();
+
+        String tempDir = tempDir(fileType);
+        if (tempDir == null) {
+            result.put("success", false);
+            result.put("error", "不支持的文件类型");
+            return result;
+        }
+        if (sessionId != null) {
+            Path sessionDir = existingSessionDir(tempDir, sessionId, result);
+            if (sessionDir == null) {
+                return result;
+            }
+            tempDir = sessionDir.toString();
+            if (identifier == null) {
+                identifier = sessionId;
+            }
+        }
+        if (identifier == null) {
+            result.put("success", false);
+            result.put("error", "缺少必需参数: identifier 或 sessionId");
+            return result;
+        }
+
+        try {
+            PreallocatedUpload upload = findPreallocatedUpload(tempDir, identifier);
+            result.put("success", true);
+            result.put("identifier", identifier);
+            result.put("exists", upload != null);
+            if (upload != null) {
+                List<int[]> missingRanges = upload.missingRanges();
+                result.put("fileSize", upload.getFileSize());
+                result.put("chunkSize", upload.getChunkSize());
+                result.put("totalChunks", upload.getTotalChunks());
+                result.put("receivedChunks", upload.receivedChunks());
+                result.put("missingRanges", missingRanges);
+                result.put("complete", missingRanges.isEmpty());
+            }
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", "读取上传状态失败: " + e.getMessage());
+            logger.error("Load upload state failed", e);
+        }
+        return result;
+    }
+
     // 同时支持@RequestParam和@RequestBody两种方式
     @PostMapping("/merge-chunks")
     public Map<String, Object> mergeChunks(
             @RequestParam(value = "fileType", required = false) String fileTypeParam,
             @RequestParam(value = "fileName", required = false) String fileNameParam,
             @RequestParam(value = "totalChunks", required = false) Integer totalChunksParam,
+            @RequestParam(value = "identifier", required = false) String identifierParam,
+            @RequestParam(value = "sha256", required = false) String sha256Param,
+            @RequestParam(value = "sessionId", required = false) String sessionIdParam,
             @RequestBody(required = false) MergeRequest mergeRequest) {
 
         logger.info("Received merge request: fileTypeParam={}, fileNameParam={}, totalChunksParam={}, mergeRequest={}",
@@ -144,17 +352,23 @@ public class ChunkUploadController {
         Map<String, Object> result = new HashMap<>();
 
         // 确定参数来源（优先使用RequestBody，其次是RequestParam）
-        String fileType, fileName;
+        String fileType, fileName, identifier, expectedSha256, sessionId;
         int totalChunks;
 
         if (mergeRequest != null) {
             fileType = mergeRequest.getFileType();
             fileName = mergeRequest.getFileName();
             totalChunks = mergeRequest.getTotalChunks();
+            identifier = mergeRequest.getIdentifier();
+            expectedSha256 = mergeRequest.getSha256();
+            sessionId = mergeRequest.getSessionId();
         } else if (fileTypeParam != null && fileNameParam != null && totalChunksParam != null) {
             fileType = fileTypeParam;
             fileName = fileNameParam;
             totalChunks = totalChunksParam;
+            identifier = identifierParam;
+            expectedSha256 = sha256Param;
+            sessionId = sessionIdParam;
         } else {
             result.put("success", false);
             result.put("error", "缺少必需参数: fileType, fileName, totalChunks");
@@ -185,7 +399,7 @@ public class ChunkUploadController {
         }
 
         // 定义基础目录和临时目录
-        String baseDir = "D:/软件/编程/Code/后台/server"; // 项目基础目录
+        String baseDir = BASE_DIR;
         String tempDir;
         String targetDir;
 
@@ -203,6 +417,17 @@ public class ChunkUploadController {
             return result;
         }
 
+        if (sessionId != null) {
+            Path sessionDir = existingSessionDir(tempDir, sessionId, result);
+            if (sessionDir == null) {
+                return result;
+            }
+            tempDir = sessionDir.toString();
+            if (identifier == null) {
+                identifier = sessionId;
+            }
+        }
+
         logger.info("Using temp directory: {}", tempDir);
         logger.info("Using target directory: {}", targetDir);
 
@@ -229,9 +454,44 @@ public class ChunkUploadController {
             logger.warn("File name does not contain extension: {}", fileName);
         }
 
-        String finalFileName = baseName + "_" + System.currentTimeMillis() + ext;
+        // 带上会话前缀，同一毫秒内合并的同名文件不会互相覆盖
+        String finalFileName = baseName + "_" + System.currentTimeMillis()
+                + (sessionId != null ? "_" + sessionId.substring(0, 8) : "") + ext;
         Path finalFilePath = Paths.get(targetDir, finalFileName);
 
+        // 同一会话（或同一文件）的合并串行执行，重复的合并请求会在前一次完成后发现分片已不存在；不同会话的合并互不影响
+        Path mergeKey = sessionId != null ? Paths.get(tempDir)
+                : Paths.get(tempDir, identifier != null ? safeFileName(identifier) : fileName);
+        synchronized (mergeLocks.lockFor(mergeKey)) {
+            mergeUpload(tempDir, fileType, fileName, totalChunks, identifier, expectedSha256,
+                    finalFileName, finalFilePath, result);
+        }
+        if (sessionId != null && Boolean.TRUE.equals(result.get("success"))) {
+            deleteSessionDir(Paths.get(tempDir));
+        }
+        return result;
+    }
+
+    private Map<String, Object> mergeUpload(String tempDir, String fileType, String fileName, int totalChunks,
+                                            String identifier, String expectedSha256,
+                                            String finalFileName, Path finalFilePath,
+                                            Map<String, Object> result) {
+        // 预分配模式：分片已经写在目标文件中，只需确认完整后重命名
+        if (identifier != null) {
+            try {
+                PreallocatedUpload upload = findPreallocatedUpload(tempDir, identifier);
+                if (upload != null) {
+                    return commitPreallocatedUpload(upload, tempDir, identifier, fileType, expectedSha256,
+                            finalFileName, finalFilePath, result);
+                }
+            } catch (IOException e) {
+                result.put("success", false);
+                result.put("error", "读取上传状态失败: " + e.getMessage());
+                logger.error("Load upload state failed", e);
+                return result;
+            }
+        }
+
         // 合并分片文件
         try {
             // 检查所有分片是否存在
@@ -249,10 +509,32 @@ public class ChunkUploadController {
                 }
             }
 
+            // 写入时已按顺序算出内容哈希时先查重，已有相同内容的文件时不再合并；没有算完时只有客户端要求校验才读取分片补算，
+            // 否则合并后在后台计算，分片不必为了哈希多读一遍
+            long hashStart = System.nanoTime();
+            String sha256 = chunkFilesSha256(tempDir, fileName, totalChunks, isPresent(expectedSha256));
+            long hashMillis = (System.nanoTime() - hashStart) / 1_000_000;
+            if (sha256 != null && !sha256Matches(expectedSha256, sha256, result)) {
+                return result;
+            }
+            Optional<ContentFile> existing = sha256 != null
+                    ? contentHashIndex.find(sha256, chunkFilesSize(tempDir, fileName, totalChunks)) : Optional.empty();
+            if (existing.isPresent()) {
+                deleteChunkFiles(tempDir, fileName, totalChunks);
+                result.put("success", true);
+                result.put("instantUpload", true);
+                result.put("sha256", sha256);
+                putExistingFile(existing.get(), result);
+                logger.info("Merged content of {} already exists as {}", fileName, existing.get().getPath());
+                return result;
+            }
+
             Files.createFile(finalFilePath); // 创建最终文件
             logger.info("Created final file: {}", finalFilePath);
 
-            try (OutputStream output = Files.newOutputStream(finalFilePath)) {
+            long mergeStart = System.nanoTime();
+            long mergedBytes = 0;
+            try (FileChannel output = FileChannel.open(finalFilePath, StandardOpenOption.WRITE)) {
                 for (int i = 0; i < totalChunks; i++) {
                     String chunkFileName = fileName + ".part" + i;
                     Path chunkPath = Paths.get(tempDir, chunkFileName);
@@ -263,22 +545,32 @@ public class ChunkUploadController {
                         throw new IOException(errorMsg);
                     }
 
-                    // 读取并写入分片
-                    byte[] chunkData = Files.readAllBytes(chunkPath);
-                    output.write(chunkData);
+                    // 由内核在文件之间直接复制分片，数据不经过 Java 堆
+                    try (FileChannel input = FileChannel.open(chunkPath, StandardOpenOption.READ)) {
+                        mergedBytes += transferFully(input, output);
+                    }
                     logger.debug("Written chunk {} to final file", i);
-
-                    // 删除已合并的分片
-                    Files.delete(chunkPath);
-                    logger.debug("Deleted chunk file: {}", chunkPath);
                 }
+                // 确认落盘后再删除分片，中途断电不会丢失数据
+                output.force(true);
             }
+            long mergeMillis = (System.nanoTime() - mergeStart) / 1_000_000;
+
+            // 删除已合并的分片
+            deleteChunkFiles(tempDir, fileName, totalChunks);
+            registerContent(sha256, mergedBytes, fileType, finalFilePath);
 
             // 构建成功响应
             result.put("success", true);
+            result.put("instantUpload", false);
             result.put("fileName", finalFileName);
             result.put("path", finalFilePath.toString().replace("\\", "/"));
-            logger.info("Successfully merged file: {}", finalFileName);
+            result.put("fileSize", mergedBytes);
+            putSha256(sha256, result);
+            result.put("hashMillis", hashMillis);
+            result.put("mergeMillis", mergeMillis);
+            result.put("throughputMBps", throughputMBps(mergedBytes, mergeMillis));
+            logger.info("Successfully merged file: {} ({} bytes in {} ms)", finalFileName, mergedBytes, mergeMillis);
 
         } catch (Exception e) {
             result.put("success", false);
@@ -288,4 +580,460 @@ public class ChunkUploadController {
 
         return result;
     }
+
+    private Map<String, Object> writePreallocatedChunk(MultipartFile chunk, String tempDir, String fileName,
+                                                       String chunkIndex, long fileSize, long chunkSize,
+                                                       String identifier, String chunkCrc32c,
+                                                       Map<String, Object> result) {
+        try {
+            int index = Integer.parseInt(chunkIndex);
+            PreallocatedUpload upload = preallocatedUpload(tempDir, identifier, fileSize, chunkSize);
+            String crc32c;
+            try (InputStream input = chunk.getInputStream()) {
+                crc32c = upload.writeChunk(index, input, chunk.getSize(), chunkCrc32c);
+            }
+            result.put("success", true);
+            // 重复上传已收到的分片不会再次写入
+            result.put("duplicate", crc32c == null);
+            result.put("crc32c", crc32c);
+            result.put("fileName", fileName);
+            result.put("chunkIndex", index);
+            result.put("totalChunks", upload.getTotalChunks());
+            result.put("receivedChunks", upload.receivedChunks());
+            result.put("fileSize", fileSize);
+            result.put("identifier", identifier);
+        } catch (NumberFormatException e) {
+            result.put("success", false);
+            result.put("error", "分片索引不正确: " + chunkIndex);
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+            logger.warn("Rejected chunk {} of {}: {}", chunkIndex, identifier, e.getMessage());
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", "分片保存失败: " + e.getMessage());
+            logger.error("Chunk save failed", e);
+        }
+        return result;
+    }
+
+    private PreallocatedUpload preallocatedUpload(String tempDir, String identifier, long fileSize, long chunkSize)
+            throws IOException {
+        Path dataPath = preallocatedDataPath(tempDir, identifier);
+        PreallocatedUpload upload = preallocatedUploads.get(dataPath);
+        if (upload == null) {
+            synchronized (uploadLocks.lockFor(dataPath)) {
+                upload = preallocatedUploads.get(dataPath);
+                if (upload == null) {
+                    upload = PreallocatedUpload.open(dataPath, fileSize, chunkSize);
+                    preallocatedUploads.put(dataPath, upload);
+                }
+            }
+        }
+        if (upload.getFileSize() != fileSize || upload.getChunkSize() != chunkSize) {
+            throw new IllegalArgumentException("文件大小或分片大小与已上传的分片不一致");
+        }
+        return upload;
+    }
+
+    // 在内存或磁盘上查找进行中的预分配上传，没有时返回 null
+    private PreallocatedUpload findPreallocatedUpload(String tempDir, String identifier) throws IOException {
+        Path dataPath = preallocatedDataPath(tempDir, identifier);
+        PreallocatedUpload upload = preallocatedUploads.get(dataPath);
+        if (upload != null) {
+            return upload;
+        }
+        synchronized (uploadLocks.lockFor(dataPath)) {
+            upload = preallocatedUploads.get(dataPath);
+            if (upload == null) {
+                upload = PreallocatedUpload.load(dataPath);
+                if (upload != null) {
+                    preallocatedUploads.put(dataPath, upload);
+                }
+            }
+            return upload;
+        }
+    }
+
+    private static Path preallocatedDataPath(String tempDir, String identifier) {
+        return Paths.get(tempDir, safeFileName(identifier) + ".upload");
+    }
+
+    private Map<String, Object> commitPreallocatedUpload(PreallocatedUpload upload, String tempDir, String identifier,
+                                                         String fileType, String expectedSha256,
+                                                         String finalFileName, Path finalFilePath,
+                                                         Map<String, Object> result) {
+        try {
+            // 按顺序上传时写入过程中已算出哈希；否则只有客户端要求校验时才在这里读取整个文件，其余情况提交后在后台计算
+            long hashStart = System.nanoTime();
+            String sha256 = upload.streamedSha256();
+            if (sha256 == null && isPresent(expectedSha256)) {
+                sha256 = upload.sha256();
+            }
+            long hashMillis = (System.nanoTime() - hashStart) / 1_000_000;
+            if (sha256 != null && !sha256Matches(expectedSha256, sha256, result)) {
+                // 分片都已标记为收到，内容不一致时只能丢弃后重新上传
+                upload.discard();
+                forgetPreallocatedUpload(tempDir, identifier);
+                return result;
+            }
+            Optional<ContentFile> existing = sha256 != null
+                    ? contentHashIndex.find(sha256, upload.getFileSize()) : Optional.empty();
+            if (existing.isPresent()) {
+                upload.discard();
+                forgetPreallocatedUpload(tempDir, identifier);
+                result.put("success", true);
+                result.put("instantUpload", true);
+                result.put("sha256", sha256);
+                putExistingFile(existing.get(), result);
+                logger.info("Content of upload {} already exists as {}", identifier, existing.get().getPath());
+                return result;
+            }
+
+            long commitStart = System.nanoTime();
+            upload.commit(finalFilePath);
+            long mergeMillis = (System.nanoTime() - commitStart) / 1_000_000;
+            forgetPreallocatedUpload(tempDir, identifier);
+            registerContent(sha256, upload.getFileSize(), fileType, finalFilePath);
+
+            result.put("success", true);
+            result.put("instantUpload", false);
+            result.put("fileName", finalFileName);
+            result.put("path", finalFilePath.toString().replace("\\", "/"));
+            result.put("fileSize", upload.getFileSize());
+            putSha256(sha256, result);
+            result.put("hashMillis", hashMillis);
+            result.put("mergeMillis", mergeMillis);
+            logger.info("Committed preallocated upload {} as {} in {} ms", identifier, finalFileName, mergeMillis);
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", "合并分片失败: " + e.getMessage());
+            logger.error("Commit preallocated upload failed", e);
+        }
+        return result;
+    }
+
+    private void forgetPreallocatedUpload(String tempDir, String identifier) {
+        preallocatedUploads.remove(preallocatedDataPath(tempDir, identifier));
+    }
+
+    /**
+     * 保存 .partN 分片。分片正好是下一个待计算的分片时在写入的同时计算 SHA-256，合并时不需要再读一遍。
+     *
+     * @return 分片的 CRC32C（十六进制）
+     * @throws IllegalArgumentException CRC32C 与客户端提交的不一致，此时分片已被删除
+     */
+    private String writeChunkFile(MultipartFile chunk, String tempDir, String fileName, String chunkIndex,
+                                  Path destinationPath, String expectedCrc32c) throws IOException {
+        int index;
+        try {
+            index = Integer.parseInt(chunkIndex);
+        } catch (NumberFormatException e) {
+            // 不是数字的分片索引不会参与合并，只保存
+            index = -1;
+        }
+        SequentialSha256 contentHash =
+                chunkHashes.computeIfAbsent(Paths.get(tempDir, fileName), path -> new SequentialSha256());
+        contentHash.rewritten(index);
+
+        CRC32C crc = new CRC32C();
+        boolean success = false;
+        try (InputStream checked = new CheckedInputStream(chunk.getInputStream(), crc)) {
+            InputStream hashed = contentHash.begin(index, checked);
+            try {
+                Files.copy(hashed != null ? hashed : checked, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+                String actualCrc32c = ChunkChecksums.toHex(crc);
+                ChunkChecksums.verify(index, expectedCrc32c, actualCrc32c);
+                success = true;
+                return actualCrc32c;
+            } finally {
+                contentHash.end(success);
+            }
+        } finally {
+            if (!success) {
+                Files.deleteIfExists(destinationPath);
+            }
+        }
+    }
+
+    /**
+     * 整个文件的 SHA-256：写入时已按顺序算完时直接返回；否则 readRemaining 为 true 时从第一个还没计算过的分片开始
+     * 按顺序读取剩余分片补算，为 false 时返回 null。
+     */
+    private String chunkFilesSha256(String tempDir, String fileName, int totalChunks, boolean readRemaining)
+            throws IOException {
+        SequentialSha256 contentHash = chunkHashes.remove(Paths.get(tempDir, fileName));
+        if (contentHash == null || contentHash.nextChunk() > totalChunks) {
+            contentHash = new SequentialSha256();
+        }
+        if (contentHash.isComplete(totalChunks)) {
+            return contentHash.finish(InputStream.nullInputStream());
+        }
+        if (!readRemaining) {
+            return null;
+        }
+        int first = contentHash.nextChunk();
+        // 逐个打开分片，避免同时占用大量文件句柄
+        Enumeration<InputStream> parts = new Enumeration<>() {
+            private int next = first;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < totalChunks;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return Files.newInputStream(Paths.get(tempDir, fileName + ".part" + next++));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        try (InputStream remaining = new SequenceInputStream(parts)) {
+            return contentHash.finish(remaining);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static long chunkFilesSize(String tempDir, String fileName, int totalChunks) throws IOException {
+        long size = 0;
+        for (int i = 0; i < totalChunks; i++) {
+            size += Files.size(Paths.get(tempDir, fileName + ".part" + i));
+        }
+        return size;
+    }
+
+    private static void deleteChunkFiles(String tempDir, String fileName, int totalChunks) throws IOException {
+        for (int i = 0; i < totalChunks; i++) {
+            Path chunkPath = Paths.get(tempDir, fileName + ".part" + i);
+            Files.delete(chunkPath);
+            logger.debug("Deleted chunk file: {}", chunkPath);
+        }
+    }
+
+    // 客户端提供了 SHA-256 时与服务端计算的结果比较，不一致时写入错误信息
+    private static boolean sha256Matches(String expected, String actual, Map<String, Object> result) {
+        if (expected == null || expected.isBlank() || expected.trim().equalsIgnoreCase(actual)) {
+            return true;
+        }
+        result.put("success", false);
+        result.put("error", String.format("文件校验失败：SHA-256 应为 %s，实际为 %s", expected.trim(), actual));
+        logger.warn("SHA-256 mismatch: expected {}, actual {}", expected, actual);
+        return false;
+    }
+
+    // 登记失败不影响已保存的文件，只是之后不能秒传；还没有算出哈希时在后台计算后登记
+    private void registerContent(String sha256, long fileSize, String fileType, Path path) {
+        if (sha256 == null) {
+            contentHashIndex.registerInBackground(fileSize, fileType, path);
+            return;
+        }
+        try {
+            contentHashIndex.register(sha256, fileSize, fileType, path);
+        } catch (Exception e) {
+            logger.warn("Failed to register content hash of {}", path, e);
+        }
+    }
+
+    // 哈希在后台计算时响应中没有 sha256，hashPending 为 true
+    private static void putSha256(String sha256, Map<String, Object> result) {
+        if (sha256 != null) {
+            result.put("sha256", sha256);
+        }
+        result.put("hashPending", sha256 == null);
+    }
+
+    private static boolean isPresent(String value) {
+        return value != null && !value.isBlank();
+    }
+
+    private static void putExistingFile(ContentFile file, Map<String, Object> result) {
+        result.put("fileName", Paths.get(file.getPath()).getFileName().toString());
+        result.put("path", file.getPath());
+        result.put("fileSize", file.getFileSize());
+        result.put("fileType", file.getFileType());
+    }
+
+    private static String tempDir(String fileType) {
+        if ("image".equals(fileType)) {
+            return BASE_DIR + "/images/temp";
+        } else if ("video".equals(fileType)) {
+            return BASE_DIR + "/videos/temp";
+        }
+        return null;
+    }
+
+    // 按 sessionId 的前两个字符分到子目录，临时目录下不会堆积大量条目
+    private static Path sessionDir(String tempDir, String sessionId) {
+        return Paths.get(tempDir, "sessions", sessionId.substring(0, 2), sessionId);
+    }
+
+    /**
+     * 定期删除已放弃的上传会话：会话目录的修改时间在每次请求时更新，超过 upload.session.ttl-hours 没有更新的
+     * 会话连同其中的分片一起删除，并清理内存中对应的上传状态。与合并使用同一把锁，不会删除正在合并的会话。
+     * 不使用会话、直接放在共享临时目录中的上传按文件的修改时间以同样的期限清理。
+     */
+    @Scheduled(fixedDelayString = "${upload.session.sweep-interval-ms:600000}",
+            initialDelayString = "${upload.session.sweep-interval-ms:600000}")
+    public void sweepExpiredSessions() {
+        long expiredBefore = System.currentTimeMillis() - sessionTtlMillis;
+        for (String fileType : new String[]{"image", "video"}) {
+            sweepSharedTempDir(Paths.get(tempDir(fileType)), expiredBefore);
+            Path sessionsDir = Paths.get(tempDir(fileType), "sessions");
+            if (!Files.isDirectory(sessionsDir)) {
+                continue;
+            }
+            try (Stream<Path> sessionDirs = Files.find(sessionsDir, 2, (path, attributes) ->
+                    path.getNameCount() == sessionsDir.getNameCount() + 2 && attributes.isDirectory())) {
+                sessionDirs.forEach(sessionDir -> sweepIfExpired(sessionDir, expiredBefore));
+            } catch (IOException | UncheckedIOException e) {
+                logger.warn("Failed to sweep upload sessions in {}", sessionsDir, e);
+            }
+        }
+    }
+
+    private void sweepIfExpired(Path sessionDir, long expiredBefore) {
+        synchronized (mergeLocks.lockFor(sessionDir)) {
+            try {
+                if (!Files.isDirectory(sessionDir)
+                        || Files.getLastModifiedTime(sessionDir).toMillis() >= expiredBefore) {
+                    return;
+                }
+            } catch (IOException e) {
+                return;
+            }
+            preallocatedUploads.keySet().removeIf(path -> path.startsWith(sessionDir));
+            chunkHashes.keySet().removeIf(path -> path.startsWith(sessionDir));
+            deleteSessionDir(sessionDir);
+            logger.info("Removed expired upload session {}", sessionDir.getFileName());
+        }
+    }
+
+    // 共享临时目录中超时的 .partN 分片和预分配上传（.upload 及其 .state），加锁方式与合并时相同
+    private void sweepSharedTempDir(Path tempDir, long expiredBefore) {
+        if (!Files.isDirectory(tempDir)) {
+            return;
+        }
+        List<Path> expired;
+        try (Stream<Path> files = Files.list(tempDir)) {
+            expired = files.filter(path -> Files.isRegularFile(path) && modifiedBefore(path, expiredBefore)).toList();
+        } catch (IOException | UncheckedIOException e) {
+            logger.warn("Failed to sweep abandoned uploads in {}", tempDir, e);
+            return;
+        }
+
+        for (Path path : expired) {
+            String name = path.getFileName().toString();
+            try {
+                if (name.endsWith(".upload")) {
+                    Path stateFile = path.resolveSibling(name + ".state");
+                    synchronized (mergeLocks.lockFor(tempDir.resolve(name.substring(0, name.length() - 7)))) {
+                        // 数据文件和位图任一在等待锁期间被写入，说明上传仍在进行
+                        if (!modifiedBefore(path, expiredBefore) || !modifiedBefore(stateFile, expiredBefore)) {
+                            continue;
+                        }
+                        preallocatedUploads.remove(path);
+                        Files.deleteIfExists(path);
+                        Files.deleteIfExists(stateFile);
+                    }
+                } else if (name.endsWith(".upload.state")) {
+                    // 只清理数据文件已不存在的位图，其余的随数据文件一起处理
+                    if (Files.exists(path.resolveSibling(name.substring(0, name.length() - 6)))
+                            || !Files.deleteIfExists(path)) {
+                        continue;
+                    }
+                } else if (name.contains(".part")) {
+                    String fileName = name.substring(0, name.lastIndexOf(".part"));
+                    synchronized (mergeLocks.lockFor(tempDir.resolve(fileName))) {
+                        if (!modifiedBefore(path, expiredBefore)) {
+                            continue;
+                        }
+                        chunkHashes.remove(tempDir.resolve(fileName));
+                        Files.deleteIfExists(path);
+                    }
+                } else {
+                    continue;
+                }
+                logger.info("Removed abandoned upload file {}", path);
+            } catch (IOException e) {
+                logger.warn("Failed to remove abandoned upload file {}", path, e);
+            }
+        }
+    }
+
+    // 文件不存在时视为已过期
+    private static boolean modifiedBefore(Path path, long time) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis() < time;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    // sessionId 必须是 /chunk-upload/init 返回的、还没有合并的会话，否则写入错误信息并返回 null
+    private static Path existingSessionDir(String tempDir, String sessionId, Map<String, Object> result) {
+        try {
+            // 只接受 UUID，避免客户端通过 sessionId 访问其他目录
+            if (!UUID.fromString(sessionId).toString().equals(sessionId)) {
+                throw new IllegalArgumentException(sessionId);
+            }
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("error", "上传会话不正确: " + sessionId);
+            return null;
+        }
+        Path sessionDir = sessionDir(tempDir, sessionId);
+        try {
+            // 记录会话最近一次被使用的时间，过期清理以此为准；预分配模式写入已有文件时目录本身的修改时间不会变化
+            Files.setLastModifiedTime(sessionDir, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            result.put("success", false);
+            result.put("error", "上传会话不存在或已完成: " + sessionId);
+            return null;
+        }
+        return sessionDir;
+    }
+
+    // 合并成功后删除会话目录及其中剩余的文件，删除失败不影响合并结果
+    private static void deleteSessionDir(Path sessionDir) {
+        try (Stream<Path> paths = Files.walk(sessionDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            logger.warn("Failed to delete upload session directory {}", sessionDir, e);
+        }
+    }
+
+    // identifier 由客户端生成，只保留可以安全用作文件名的字符
+    private static String safeFileName(String identifier) {
+        return identifier.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    // transferTo 单次可能只复制一部分（Linux 上单次最多约 2GB），循环直到复制完整个分片
+    private static long transferFully(FileChannel source, FileChannel target) throws IOException {
+        long size = source.size();
+        long position = 0;
+        while (position < size) {
+            long transferred = source.transferTo(position, size - position, target);
+            if (transferred <= 0) {
+                throw new IOException("分片在合并过程中被截断");
+            }
+            position += transferred;
+        }
+        return size;
+    }
+
+    private static double throughputMBps(long bytes, long millis) {
+        double megabytes = bytes / (1024.0 * 1024.0);
+        double seconds = Math.max(millis, 1) / 1000.0;
+        return Math.round(megabytes / seconds * 100) / 100.0;
+    }
 }
@@ -0,0 +1,90 @@
+package com.example.demo;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * 按内容哈希登记的已上传文件，用于秒传：内容相同的文件只保存一份。
+ */
+@Entity
+@Table(name = "content_files", indexes = {
+        @Index(name = "uk_content_files_sha256", columnList = "sha256", unique = true)
+})
+public class ContentFile {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // 文件内容的 SHA-256，小写十六进制
+    @Column(name = "sha256", length = 64, nullable = false)
+    private String sha256;
+
+    @Column(name = "file_size", nullable = false)
+    private Long fileSize;
+
+    @Column(name = "file_type")
+    private String fileType; // "video" 或 "image"
+
+    @Column(name = "path", length = 1024, nullable = false)
+    private String path;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    // Constructors
+    public ContentFile() {}
+
+    public ContentFile(String sha256, Long fileSize, String fileType, String path) {
+        this.sha256 = sha256;
+        this.fileSize = fileSize;
+        this.fileType = fileType;
+        this.path = path;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(Long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public void setFileType(String fileType) {
+        this.fileType = fileType;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
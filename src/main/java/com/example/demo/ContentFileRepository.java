@@ -0,0 +1,9 @@
+package com.example.demo;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Optional;
+
+public interface ContentFileRepository extends JpaRepository<ContentFile, Long> {
+    Optional<ContentFile> findBySha256(String sha256);
+}
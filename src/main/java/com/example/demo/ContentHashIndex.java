@@ -0,0 +1,104 @@
+package com.example.demo;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 内容哈希到已保存文件的索引。上传前可以用哈希查询，已有相同内容时直接引用已有文件，不需要再上传。
+ * <p>
+ * 合并时还没有算出哈希的文件由 {@link #registerInBackground} 在单独的线程中读取计算后登记，合并请求不等待。
+ */
+@Component
+public class ContentHashIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentHashIndex.class);
+
+    private final ContentFileRepository contentFileRepository;
+
+    // 同一时间只计算一个文件，避免与上传争抢磁盘带宽
+    private final ExecutorService hashExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "content-hash");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ContentHashIndex(ContentFileRepository contentFileRepository) {
+        this.contentFileRepository = contentFileRepository;
+    }
+
+    /**
+     * 查找内容相同的已有文件。登记的文件已从磁盘删除时同时清理这条记录。
+     */
+    public Optional<ContentFile> find(String sha256, long fileSize) {
+        Optional<ContentFile> existing = contentFileRepository.findBySha256(sha256.toLowerCase());
+        if (existing.isEmpty() || existing.get().getFileSize() != fileSize) {
+            return Optional.empty();
+        }
+        if (!Files.exists(Paths.get(existing.get().getPath()))) {
+            logger.info("Indexed file no longer exists, removing: {}", existing.get().getPath());
+            contentFileRepository.delete(existing.get());
+            return Optional.empty();
+        }
+        return existing;
+    }
+
+    /**
+     * 登记新保存的文件。并发上传相同内容时只有一个会登记成功，返回先登记的记录。
+     */
+    public ContentFile register(String sha256, long fileSize, String fileType, Path path) {
+        try {
+            return contentFileRepository.save(
+                    new ContentFile(sha256, fileSize, fileType, path.toString().replace("\\", "/")));
+        } catch (DataIntegrityViolationException e) {
+            return contentFileRepository.findBySha256(sha256).orElseThrow(() -> e);
+        }
+    }
+
+    /**
+     * 在后台读取已保存的文件计算 SHA-256 后登记。登记完成前相同内容的上传不能秒传；失败时只记录日志。
+     */
+    public void registerInBackground(long fileSize, String fileType, Path path) {
+        hashExecutor.execute(() -> {
+            try {
+                long start = System.nanoTime();
+                String sha256 = sha256Of(path);
+                ContentFile registered = register(sha256, fileSize, fileType, path);
+                logger.info("Hashed {} in {} ms, registered as {}", path,
+                        (System.nanoTime() - start) / 1_000_000, registered.getPath());
+            } catch (Exception e) {
+                logger.warn("Failed to hash and register {}", path, e);
+            }
+        });
+    }
+
+    private static String sha256Of(Path path) throws IOException {
+        MessageDigest digest = SequentialSha256.newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = Files.newInputStream(path)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashExecutor.shutdownNow();
+    }
+}
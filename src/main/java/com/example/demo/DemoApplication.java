@@ -5,11 +5,13 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @ComponentScan(basePackages = {"com.example.demo", "com.example.csv", "com.example.dto"})
 @EnableJpaRepositories(basePackages = {"com.example.demo", "com.example.csv"})
 @EntityScan(basePackages = {"com.example.demo", "com.example.csv"})
+@EnableScheduling
 public class DemoApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(DemoApplication.class, args);
@@ -0,0 +1,271 @@
+package com.example.demo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * 不需要合并的分片上传：第一个分片到达时按 fileSize 创建稀疏文件，每个分片直接写到 chunkIndex × chunkSize 的位置。
+ * 全部分片到齐后把文件落盘并原子地重命名为最终文件，每个字节只写一次磁盘。
+ * <p>
+ * 已收到的分片记在位图中，位图保存在数据文件旁的 .state 文件里（固定长度的文件头 + 每个分片一位），
+ * 每收到一个分片只改写其中一个字节。分片数据先落盘再写位图，所以位图中标记的分片在断电或重启后一定完整；
+ * 服务重启后客户端可以查询缺少的分片，只补传这些分片。
+ * <p>
+ * 写入时同时计算每个分片的 CRC32C 和整个文件的 SHA-256（见 {@link SequentialSha256}），分片校验失败时不会标记为已收到。
+ * 分片按顺序到达时提交前即可得到 SHA-256；否则提交时不读取文件，由调用方决定是否补算。
+ */
+class PreallocatedUpload {
+
+    private static final int STATE_MAGIC = 0x43485550;
+    // magic + fileSize + chunkSize + totalChunks
+    private static final int STATE_HEADER_SIZE = 4 + 8 + 8 + 4;
+
+    private final Path dataPath;
+    private final Path statePath;
+    private final long fileSize;
+    private final long chunkSize;
+    private final int totalChunks;
+    private final BitSet received;
+    // 只保存在内存中，服务重启后需要时从头读取计算
+    private final SequentialSha256 contentHash = new SequentialSha256();
+
+    private PreallocatedUpload(Path dataPath, long fileSize, long chunkSize, BitSet received) {
+        this.dataPath = dataPath;
+        this.statePath = statePath(dataPath);
+        this.fileSize = fileSize;
+        this.chunkSize = chunkSize;
+        this.totalChunks = chunkCount(fileSize, chunkSize);
+        this.received = received;
+    }
+
+    /**
+     * 继续之前的上传，没有时创建目标大小的稀疏文件（只写入最后一个字节，不实际占用磁盘空间）。
+     *
+     * @throws IllegalArgumentException 已有上传的文件大小或分片大小与参数不一致
+     */
+    static PreallocatedUpload open(Path dataPath, long fileSize, long chunkSize) throws IOException {
+        if (fileSize < 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("文件大小或分片大小不正确");
+        }
+        if ((fileSize + chunkSize - 1) / chunkSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("分片数量过多");
+        }
+        PreallocatedUpload existing = load(dataPath);
+        if (existing != null) {
+            if (existing.fileSize != fileSize || existing.chunkSize != chunkSize) {
+                throw new IllegalArgumentException("文件大小或分片大小与已上传的分片不一致");
+            }
+            return existing;
+        }
+
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.SPARSE)) {
+            if (fileSize > 0) {
+                channel.write(ByteBuffer.allocate(1), fileSize - 1);
+            }
+        }
+        int totalChunks = chunkCount(fileSize, chunkSize);
+        ByteBuffer state = ByteBuffer.allocate(STATE_HEADER_SIZE + (totalChunks + 7) / 8);
+        state.putInt(STATE_MAGIC).putLong(fileSize).putLong(chunkSize).putInt(totalChunks);
+        // 位图部分全为 0
+        Files.write(statePath(dataPath), state.array());
+        return new PreallocatedUpload(dataPath, fileSize, chunkSize, new BitSet(totalChunks));
+    }
+
+    /**
+     * 读取保存在磁盘上的上传状态。
+     *
+     * @return 没有进行中的上传时为 null
+     */
+    static PreallocatedUpload load(Path dataPath) throws IOException {
+        Path statePath = statePath(dataPath);
+        if (!Files.exists(statePath) || !Files.exists(dataPath)) {
+            return null;
+        }
+        ByteBuffer state = ByteBuffer.wrap(Files.readAllBytes(statePath));
+        if (state.remaining() < STATE_HEADER_SIZE || state.getInt() != STATE_MAGIC) {
+            throw new IOException("上传状态文件已损坏: " + statePath);
+        }
+        long fileSize = state.getLong();
+        long chunkSize = state.getLong();
+        int totalChunks = state.getInt();
+        if (state.remaining() != (totalChunks + 7) / 8 || totalChunks != chunkCount(fileSize, chunkSize)) {
+            throw new IOException("上传状态文件已损坏: " + statePath);
+        }
+        BitSet received = BitSet.valueOf(state);
+        return new PreallocatedUpload(dataPath, fileSize, chunkSize, received);
+    }
+
+    /**
+     * 把分片写到它在文件中的位置。同一文件的不同分片可以并发写入。
+     *
+     * @param expectedCrc32c 客户端计算的分片 CRC32C（十六进制），为 null 时不校验
+     * @return 分片的 CRC32C（十六进制）；该分片之前已经收到、本次没有写入时为 null
+     * @throws IllegalArgumentException 分片大小不正确或 CRC32C 不一致
+     */
+    String writeChunk(int chunkIndex, InputStream input, long length, String expectedCrc32c) throws IOException {
+        if (chunkIndex < 0 || chunkIndex >= totalChunks) {
+            throw new IllegalArgumentException("分片索引超出范围: " + chunkIndex);
+        }
+        if (length != expectedLength(chunkIndex)) {
+            throw new IllegalArgumentException(String.format("分片 %d 大小应为 %d 字节，实际为 %d 字节",
+                    chunkIndex, expectedLength(chunkIndex), length));
+        }
+        if (isReceived(chunkIndex)) {
+            return null;
+        }
+
+        CRC32C crc = new CRC32C();
+        InputStream checked = new CheckedInputStream(input, crc);
+        InputStream hashed = contentHash.begin(chunkIndex, checked);
+        boolean success = false;
+        try {
+            long position = chunkIndex * chunkSize;
+            long end = position + length;
+            try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.WRITE);
+                 ReadableByteChannel source = Channels.newChannel(hashed != null ? hashed : checked)) {
+                while (position < end) {
+                    long transferred = channel.transferFrom(source, position, end - position);
+                    if (transferred <= 0) {
+                        throw new IOException("分片数据不完整: " + chunkIndex);
+                    }
+                    position += transferred;
+                }
+                String actualCrc32c = ChunkChecksums.toHex(crc);
+                ChunkChecksums.verify(chunkIndex, expectedCrc32c, actualCrc32c);
+                // 数据落盘后才在位图中标记
+                channel.force(false);
+                markReceived(chunkIndex);
+                success = true;
+                return actualCrc32c;
+            }
+        } finally {
+            contentHash.end(success);
+        }
+    }
+
+    private void markReceived(int chunkIndex) throws IOException {
+        synchronized (received) {
+            received.set(chunkIndex);
+            // 同一字节中的其他位也可能刚被设置，在锁内一起写出
+            int byteIndex = chunkIndex / 8;
+            byte[] bitmap = received.toByteArray();
+            byte value = byteIndex < bitmap.length ? bitmap[byteIndex] : 0;
+            try (FileChannel channel = FileChannel.open(statePath, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[]{value}), STATE_HEADER_SIZE + byteIndex);
+            }
+        }
+    }
+
+    boolean isReceived(int chunkIndex) {
+        synchronized (received) {
+            return received.get(chunkIndex);
+        }
+    }
+
+    int receivedChunks() {
+        synchronized (received) {
+            return received.cardinality();
+        }
+    }
+
+    /**
+     * @return 缺少的分片区间，每项为 [起始索引, 结束索引]（含两端），按索引升序
+     */
+    List<int[]> missingRanges() {
+        List<int[]> ranges = new ArrayList<>();
+        synchronized (received) {
+            int start = received.nextClearBit(0);
+            while (start < totalChunks) {
+                int next = received.nextSetBit(start);
+                int end = next < 0 ? totalChunks : next;
+                ranges.add(new int[]{start, end - 1});
+                start = received.nextClearBit(end);
+            }
+        }
+        return ranges;
+    }
+
+    int getTotalChunks() {
+        return totalChunks;
+    }
+
+    long getFileSize() {
+        return fileSize;
+    }
+
+    long getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return 上传时已按顺序算完整个文件时的 SHA-256，否则为 null；不读取文件
+     */
+    String streamedSha256() throws IOException {
+        checkComplete();
+        return contentHash.isComplete(totalChunks) ? contentHash.finish(InputStream.nullInputStream()) : null;
+    }
+
+    /**
+     * 计算整个文件的 SHA-256。上传时已按顺序计算过的部分不再读取。
+     */
+    String sha256() throws IOException {
+        checkComplete();
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            channel.position(contentHash.nextChunk() * chunkSize);
+            return contentHash.finish(Channels.newInputStream(channel));
+        }
+    }
+
+    /**
+     * 确认分片已全部到齐，落盘后把文件原子地移动到 target，并删除上传状态。
+     */
+    void commit(Path target) throws IOException {
+        checkComplete();
+        try (FileChannel channel = FileChannel.open(dataPath, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(dataPath, target, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(statePath);
+    }
+
+    /**
+     * 删除已上传的数据和上传状态，用于已有相同内容的文件时。
+     */
+    void discard() throws IOException {
+        Files.deleteIfExists(dataPath);
+        Files.deleteIfExists(statePath);
+    }
+
+    private void checkComplete() throws IOException {
+        int missing = totalChunks - receivedChunks();
+        if (missing > 0) {
+            throw new IOException("还有 " + missing + " 个分片未上传");
+        }
+    }
+
+    private long expectedLength(int chunkIndex) {
+        return Math.min(chunkSize, fileSize - chunkIndex * chunkSize);
+    }
+
+    private static int chunkCount(long fileSize, long chunkSize) {
+        return (int) Math.max(1, (fileSize + chunkSize - 1) / chunkSize);
+    }
+
+    private static Path statePath(Path dataPath) {
+        return dataPath.resolveSibling(dataPath.getFileName() + ".state");
+    }
+}
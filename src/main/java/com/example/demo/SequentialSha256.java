@@ -0,0 +1,114 @@
+package com.example.demo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 按分片顺序计算整个文件的 SHA-256。
+ * <p>
+ * 到达的分片正好是下一个待计算的分片时，在写入磁盘的同时计算，不需要再读一遍；
+ * 乱序到达或与其他分片同时到达的分片只写入，之后的分片也不再计算。按顺序上传时合并前即可得到结果
+ * （见 {@link #isComplete}），否则由调用方决定是从磁盘补算剩余部分还是在合并后另行计算。
+ */
+class SequentialSha256 {
+
+    // 已确认的前 nextChunk 个分片的摘要
+    private MessageDigest digest = newDigest();
+    // 正在写入的分片在 digest 副本上计算，写入成功后才替换 digest，失败时直接丢弃
+    private MessageDigest streamingDigest;
+    private int nextChunk;
+    // 写入过程中有更早的分片被重新写入，本次计算的结果已经作废
+    private boolean streamStale;
+
+    /**
+     * 如果 chunkIndex 正好是下一个待计算的分片，返回边读边计算摘要的输入流，之后必须调用 {@link #end}。
+     *
+     * @return 不能在写入时计算时为 null
+     */
+    synchronized InputStream begin(int chunkIndex, InputStream input) {
+        if (streamingDigest != null || chunkIndex != nextChunk) {
+            return null;
+        }
+        try {
+            streamingDigest = (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+        streamStale = false;
+        return new DigestInputStream(input, streamingDigest);
+    }
+
+    /**
+     * @param success 分片是否已完整写入并通过校验，失败时丢弃本次计算
+     */
+    synchronized void end(boolean success) {
+        if (streamingDigest == null) {
+            return;
+        }
+        if (success && !streamStale) {
+            digest = streamingDigest;
+            nextChunk++;
+        }
+        streamingDigest = null;
+        streamStale = false;
+    }
+
+    /**
+     * 已计算过的分片被重新写入时内容可能不同，丢弃已有结果，合并前从头读取。
+     * 正在写入的分片此时也不再接着已有结果计算，写入结束时丢弃。
+     */
+    synchronized void rewritten(int chunkIndex) {
+        if (streamingDigest != null && chunkIndex <= nextChunk) {
+            streamStale = true;
+        }
+        if (chunkIndex < nextChunk) {
+            digest.reset();
+            nextChunk = 0;
+        }
+    }
+
+    /**
+     * @return 前 totalChunks 个分片是否都已在写入时计算过，此时 {@link #finish} 不需要再读取数据
+     */
+    synchronized boolean isComplete(int totalChunks) {
+        return nextChunk == totalChunks;
+    }
+
+    /**
+     * @return 下一个待计算的分片，{@link #finish} 需要从该分片开始的数据
+     */
+    synchronized int nextChunk() {
+        return nextChunk;
+    }
+
+    /**
+     * 读取从 {@link #nextChunk()} 开始的剩余数据，返回整个文件的 SHA-256（小写十六进制）。
+     * 在副本上计算，不改变已有结果，提交失败后可以再次调用。
+     */
+    synchronized String finish(InputStream remaining) throws IOException {
+        MessageDigest result;
+        try {
+            result = (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-256 digest is not cloneable", e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = remaining.read(buffer)) != -1) {
+            result.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(result.digest());
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
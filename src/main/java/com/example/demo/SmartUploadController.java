@@ -4,15 +4,25 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.*;
 
 @RestController
 //@RequestMapping("/api")
 public class SmartUploadController {
 
+    private final ContentHashIndex contentHashIndex;
+
+    // 使用构造函数注入替代字段注入
+    public SmartUploadController(ContentHashIndex contentHashIndex) {
+        this.contentHashIndex = contentHashIndex;
+    }
+
     @PostMapping("/smart-upload")
     public Map<String, Object> smartUpload(@RequestParam("files") MultipartFile[] files) {
         Map<String, Object> result = new HashMap<>();
@@ -83,23 +93,41 @@ public class SmartUploadController {
             String unique = System.currentTimeMillis() + "_" + Integer.toHexString(new Random().nextInt());
             String savedName = basename + "_" + unique + ext;
 
-            // 保存文件
+            // 保存文件，写入的同时计算 SHA-256
             try {
                 Path destinationPath = Paths.get(targetDir, savedName);
-                file.transferTo(destinationPath);
+                MessageDigest digest = SequentialSha256.newDigest();
+                try (InputStream input = new DigestInputStream(file.getInputStream(), digest)) {
+                    Files.copy(input, destinationPath);
+                }
+                String sha256 = HexFormat.of().formatHex(digest.digest());
 
                 // 统计信息
                 long size = file.getSize();
                 totalSize += size;
                 successCount++;
 
+                // 已有相同内容的文件时删除刚保存的副本，引用已有文件
+                Optional<ContentFile> existing = contentHashIndex.find(sha256, size);
+                String path;
+                if (existing.isPresent()) {
+                    Files.delete(destinationPath);
+                    path = existing.get().getPath();
+                    savedName = Paths.get(path).getFileName().toString();
+                } else {
+                    contentHashIndex.register(sha256, size, fileType, destinationPath);
+                    path = destinationPath.toString().replace("\\", "/");
+                }
+
                 // 构建返回信息
                 Map<String, Object> fileInfo = new HashMap<>();
                 fileInfo.put("originalName", originalName);
                 fileInfo.put("savedName", savedName);
                 fileInfo.put("size", size);
                 fileInfo.put("sizeFormatted", formatFileSize(size));
-                fileInfo.put("path", destinationPath.toString().replace("\\", "/"));
+                fileInfo.put("path", path);
+                fileInfo.put("sha256", sha256);
+                fileInfo.put("instantUpload", existing.isPresent());
                 fileInfo.put("mimeType", file.getContentType());
                 fileInfo.put("uploadedAt", new Date());
 
@@ -0,0 +1,24 @@
+package com.example.demo;
+
+/**
+ * 按键分段的锁。同一个键总是得到同一把锁，不同的键大多落在不同的锁上，
+ * 既不需要为每个键创建并清理锁，也不会让所有上传争用同一把全局锁。
+ */
+final class StripedLocks {
+
+    private final Object[] locks;
+
+    StripedLocks(int stripes) {
+        locks = new Object[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    Object lockFor(Object key) {
+        // 打散 hashCode 的高位，路径这类键的低位往往很相似
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return locks[Math.floorMod(hash, locks.length)];
+    }
+}
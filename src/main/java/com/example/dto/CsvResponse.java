@@ -19,6 +19,13 @@ public class CsvResponse {
         this.data = data;
     }
 
+    // 用于返回任意结构的数据，例如导入结果
+    public CsvResponse(boolean success, String message, Object data) {
+        this.success = success;
+        this.message = message;
+        this.data = data;
+    }
+
     // 新的构造函数，用于创建包含total和originData的嵌套数据结构
     public CsvResponse(boolean success, String message, List<Map<String, String>> total, List<Map<String, String>> originData) {
         this.success = success;
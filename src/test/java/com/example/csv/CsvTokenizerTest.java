@@ -0,0 +1,119 @@
+package com.example.csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 每个用例都用几种缓冲区大小解析，缓冲区为 1 时每个字符都落在块边界上（包括 \r\n 被拆开的情况）。
+ */
+class CsvTokenizerTest {
+
+    private static final int[] BUFFER_SIZES = {1, 3, 64 * 1024};
+
+    @Test
+    void quotedCommaStaysInField() throws IOException {
+        assertRecords("a,\"b,c\",d\n",
+                List.of(List.of("a", "b,c", "d")));
+    }
+
+    @Test
+    void doubledQuoteIsUnescaped() throws IOException {
+        assertRecords("\"他说\"\"好\"\"\",\"\"\"\"\n",
+                List.of(List.of("他说\"好\"", "\"")));
+    }
+
+    @Test
+    void newlinesInsideQuotesBelongToField() throws IOException {
+        assertRecords("1,\"第一行\n第二行\r\n第三行\r第四行\",x\n2,y,z\n",
+                List.of(List.of("1", "第一行\n第二行\r\n第三行\r第四行", "x"),
+                        List.of("2", "y", "z")));
+    }
+
+    @Test
+    void allLineEndingsEndRecords() throws IOException {
+        assertRecords("a,b\rc,d\r\ne,f\ng,h",
+                List.of(List.of("a", "b"), List.of("c", "d"), List.of("e", "f"), List.of("g", "h")));
+    }
+
+    @Test
+    void crLfCountsAsOneLine() throws IOException {
+        for (int bufferSize : BUFFER_SIZES) {
+            CsvTokenizer tokenizer = new CsvTokenizer(new StringReader("a\r\n\r\nb\r\"c\nd\"\re"), bufferSize);
+            long[] expectedLines = {1, 2, 3, 4, 6};
+            for (long expected : expectedLines) {
+                assertTrue(tokenizer.nextRecord());
+                assertEquals(expected, tokenizer.recordLineNumber(), "bufferSize=" + bufferSize);
+            }
+            assertFalse(tokenizer.nextRecord());
+        }
+    }
+
+    @Test
+    void quoteInsideUnquotedFieldIsLiteral() throws IOException {
+        assertRecords("12\" pizza,a\"b\"c,x\n",
+                List.of(List.of("12\" pizza", "a\"b\"c", "x")));
+    }
+
+    @Test
+    void textAfterClosingQuoteIsKept() throws IOException {
+        assertRecords("\"ab\"cd,  \"前有空白\"\n",
+                List.of(List.of("abcd", "前有空白")));
+    }
+
+    @Test
+    void blankLinesAreBlankRecords() throws IOException {
+        for (int bufferSize : BUFFER_SIZES) {
+            CsvTokenizer tokenizer = new CsvTokenizer(new StringReader("a\n  \n\"\"\n"), bufferSize);
+            assertTrue(tokenizer.nextRecord());
+            assertFalse(tokenizer.isBlankRecord());
+            assertTrue(tokenizer.nextRecord());
+            assertTrue(tokenizer.isBlankRecord());
+            // 只含一对引号的行是一个空字段，不是空行
+            assertTrue(tokenizer.nextRecord());
+            assertFalse(tokenizer.isBlankRecord());
+            assertFalse(tokenizer.nextRecord());
+        }
+    }
+
+    @Test
+    void unclosedQuoteReportsStartLine() {
+        for (int bufferSize : BUFFER_SIZES) {
+            CsvTokenizer tokenizer = new CsvTokenizer(new StringReader("a,b\nc,\"没有闭合\nd\n"), bufferSize);
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+                while (tokenizer.nextRecord()) {
+                    // 读到引号未闭合为止
+                }
+            });
+            assertTrue(e.getMessage().contains("第2行"), e.getMessage());
+        }
+    }
+
+    private static void assertRecords(String csv, List<List<String>> expected) throws IOException {
+        for (int bufferSize : BUFFER_SIZES) {
+            assertEquals(expected, readAll(csv, bufferSize), "bufferSize=" + bufferSize);
+        }
+    }
+
+    private static List<List<String>> readAll(String csv, int bufferSize) throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(new StringReader(csv), bufferSize);
+        List<List<String>> records = new ArrayList<>();
+        while (tokenizer.nextRecord()) {
+            List<String> fields = new ArrayList<>();
+            for (int i = 0; i < tokenizer.fieldCount(); i++) {
+                fields.add(new String(tokenizer.chars(), tokenizer.fieldStart(i),
+                        tokenizer.fieldEnd(i) - tokenizer.fieldStart(i)));
+            }
+            records.add(fields);
+        }
+        return records;
+    }
+}
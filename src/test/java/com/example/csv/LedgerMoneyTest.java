@@ -0,0 +1,100 @@
+package com.example.csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 快速路径的结果必须与 {@code new BigDecimal(s).setScale(2, HALF_UP)} 完全相同（超出 amount_value 范围的除外）。
+ */
+class LedgerMoneyTest {
+
+    @Test
+    void thirdDecimalIsRoundedHalfUp() {
+        assertEquals(1, LedgerMoney.parseCents("0.005"));
+        assertEquals(0, LedgerMoney.parseCents("0.0049"));
+        assertEquals(1235, LedgerMoney.parseCents("12.345"));
+        assertEquals(1234, LedgerMoney.parseCents("12.3449"));
+        // 负数按绝对值进位，与 HALF_UP 一致
+        assertEquals(-1235, LedgerMoney.parseCents("-12.345"));
+        assertEquals(-1234, LedgerMoney.parseCents("-12.3449"));
+        assertEquals(100, LedgerMoney.parseCents("0.995"));
+        assertEquals(0, LedgerMoney.parseCents("-0.004"));
+    }
+
+    @Test
+    void signsWhitespaceAndShortForms() {
+        assertEquals(-1250, LedgerMoney.parseCents("-12.5"));
+        assertEquals(1250, LedgerMoney.parseCents("+12.5"));
+        assertEquals(-800, LedgerMoney.parseCents("  -8 \t"));
+        assertEquals(50, LedgerMoney.parseCents(".5"));
+        assertEquals(-50, LedgerMoney.parseCents("-.5"));
+        assertEquals(700, LedgerMoney.parseCents("7."));
+        assertEquals(1200, LedgerMoney.parseCents("0012"));
+        assertEquals(5, LedgerMoney.parseCents("x0.05y", 1, 5));
+    }
+
+    @Test
+    void malformedAmountsAreInvalid() {
+        for (String text : new String[]{null, "", "  ", "-", "+", ".", "-.", "--1", "+-1", "- 1", "1,000",
+                "1.2.3", "12元", "abc", "1e", "0x10", "NaN"}) {
+            assertEquals(LedgerMoney.INVALID, LedgerMoney.parseCents(text), String.valueOf(text));
+        }
+    }
+
+    @Test
+    void slowPathMatchesBigDecimal() {
+        for (String text : new String[]{"1e2", "-1.5E1", "1.2345e-1", "1234567890123.45", "9999999999999.99",
+                "-9999999999999.994", "00000000000000000012.3", "1234567890123456.7"}) {
+            assertEquals(reference(text), LedgerMoney.parseCents(text), text);
+        }
+    }
+
+    @Test
+    void amountsBeyondColumnRangeAreInvalid() {
+        assertEquals(LedgerMoney.MAX_CENTS, LedgerMoney.parseCents("9999999999999.99"));
+        assertEquals(-LedgerMoney.MAX_CENTS, LedgerMoney.parseCents("-9999999999999.994"));
+        assertEquals(LedgerMoney.INVALID, LedgerMoney.parseCents("9999999999999.995"));
+        assertEquals(LedgerMoney.INVALID, LedgerMoney.parseCents("10000000000000"));
+        assertEquals(LedgerMoney.INVALID, LedgerMoney.parseCents("-1e13"));
+        // 超过快速路径位数、也超出 long 范围
+        assertEquals(LedgerMoney.INVALID, LedgerMoney.parseCents("123456789012345678901234567890"));
+    }
+
+    @Test
+    void fastPathMatchesBigDecimal() {
+        String[] integers = {"0", "1", "-1", "99", "-100", "123456", "-9999999999999", "+42"};
+        String[] fractions = {"", ".", ".0", ".1", ".05", ".50", ".994", ".995", ".9999", ".12345"};
+        for (String integer : integers) {
+            for (String fraction : fractions) {
+                String text = integer + fraction;
+                assertEquals(reference(text), LedgerMoney.parseCents(text), text);
+            }
+        }
+    }
+
+    @Test
+    void formatRoundTrips() {
+        long[] values = {0, 1, -1, 5, -5, 99, 100, -100, 1050, -123456, LedgerMoney.MAX_CENTS,
+                -LedgerMoney.MAX_CENTS, Long.MAX_VALUE, Long.MIN_VALUE};
+        char[] buffer = new char[LedgerMoney.MAX_FORMATTED_LENGTH];
+        for (long cents : values) {
+            String expected = BigDecimal.valueOf(cents, 2).toPlainString();
+            assertEquals(expected, LedgerMoney.formatCents(cents));
+            assertEquals(expected, new String(buffer, 0, LedgerMoney.formatCents(cents, buffer)));
+            if (cents >= -LedgerMoney.MAX_CENTS && cents <= LedgerMoney.MAX_CENTS) {
+                assertEquals(cents, LedgerMoney.parseCents(expected));
+            }
+        }
+        assertEquals("-0.05", LedgerMoney.formatCents(-5));
+    }
+
+    // 超出 amount_value 范围的金额按无效处理
+    private static long reference(String text) {
+        long cents = new BigDecimal(text.trim()).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        return Math.abs(cents) > LedgerMoney.MAX_CENTS ? LedgerMoney.INVALID : cents;
+    }
+}
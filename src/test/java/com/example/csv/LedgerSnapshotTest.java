@@ -0,0 +1,65 @@
+package com.example.csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerSnapshotTest {
+
+    @Test
+    void invalidRowsAreKeptButNotCounted() {
+        LedgerSnapshot snapshot = new LedgerSnapshot.Builder()
+                .add(1, "餐饮", "2024-01-05 09:30:00", "-12.5", "现金", "默认", "CNY", "早餐")
+                .add(2, "餐饮", "昨天", "-8", "现金", "默认", "CNY", "午餐")
+                .add(3, "工资", "2024-01-06", "一千", "银行", "默认", "CNY", null)
+                .add(4, "餐饮", "2024-01-04 12:00", "-20", "现金", "默认", "CNY", "晚餐")
+                .build();
+
+        assertEquals(4, snapshot.size());
+        assertEquals(2, snapshot.getInvalidCount());
+        // 无效行排在最前面，保持 id 顺序，保留原始文本
+        assertEquals(2, snapshot.id(0));
+        assertEquals(3, snapshot.id(1));
+        assertFalse(snapshot.isValid(1));
+        assertEquals("昨天", snapshot.timeText(0));
+        assertEquals("一千", snapshot.amountText(1));
+        assertEquals("2024-01-04 12:00:00", snapshot.timeText(2));
+        assertEquals("-12.50", snapshot.amountText(3));
+
+        assertEquals(new LedgerSnapshot.Range(0, 4), snapshot.range(null, null));
+        assertEquals(new LedgerSnapshot.Range(2, 4), snapshot.range(null, LedgerTime.parseEpochDayOrNull("2024-01-31")));
+
+        LedgerDailyTotals totals = snapshot.dailyTotals();
+        LedgerDailyTotals.Window window = totals.window(null, null);
+        assertEquals(2, totals.count(window));
+        assertEquals(-3250, totals.expense(window));
+
+        List<LedgerAggregator.Bucket> buckets = LedgerAggregator.aggregate(snapshot, snapshot.all(),
+                TimeGranularity.parse("month"), null);
+        assertEquals(1, buckets.size());
+        assertEquals(2, buckets.get(0).count());
+    }
+
+    @Test
+    void appendKeepsInvalidRowsOfPreviousSnapshot() {
+        LedgerSnapshot previous = new LedgerSnapshot.Builder()
+                .add(1, "餐饮", "2024-01-05", "-1", null, null, null, null)
+                .add(2, "餐饮", "", "-2", null, null, null, null)
+                .build();
+        LedgerSnapshot appended = new LedgerSnapshot.Builder()
+                .addAll(previous)
+                .add(3, "餐饮", "2024-01-03", "abc", null, null, null, "备注")
+                .build();
+
+        assertEquals(2, appended.getInvalidCount());
+        assertEquals(2, appended.id(0));
+        assertEquals(3, appended.id(1));
+        assertEquals("", appended.timeText(0));
+        assertEquals("abc", appended.amountText(1));
+        assertTrue(appended.isValid(2));
+    }
+}
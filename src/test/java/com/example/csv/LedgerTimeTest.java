@@ -0,0 +1,83 @@
+package com.example.csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LedgerTimeTest {
+
+    @Test
+    void acceptedFormats() {
+        assertParsed("2024-01-05", 2024, 1, 5, 0, 0, 0);
+        assertParsed("2024/1/5", 2024, 1, 5, 0, 0, 0);
+        assertParsed("2024.01.05", 2024, 1, 5, 0, 0, 0);
+        assertParsed("2024-01-05 09:30", 2024, 1, 5, 9, 30, 0);
+        assertParsed("2024/1/5 9:30", 2024, 1, 5, 9, 30, 0);
+        assertParsed("2024-01-05 9:3:5", 2024, 1, 5, 9, 3, 5);
+        assertParsed("2024-01-05T23:59:59", 2024, 1, 5, 23, 59, 59);
+        assertParsed("2024-01-05   09:30:00", 2024, 1, 5, 9, 30, 0);
+        assertParsed(" \t2024-02-29 00:00:00 ", 2024, 2, 29, 0, 0, 0);
+        assertParsed("2000-02-29", 2000, 2, 29, 0, 0, 0);
+        assertParsed("1969-12-31 23:59:59", 1969, 12, 31, 23, 59, 59);
+        assertParsed("0024-03-01", 24, 3, 1, 0, 0, 0);
+    }
+
+    @Test
+    void rejectedFormats() {
+        for (String text : new String[]{null, "", "   ", "24-01-05", "20240105", "2024-01", "2024-13-01",
+                "2024-00-10", "2024-01-00", "2024-04-31", "2023-02-29", "1900-02-29", "2024-01-05 24:00",
+                "2024-01-05 09:60", "2024-01-05 09:30:60", "2024-01-05 09", "2024-01-05 09:30:00.123",
+                "2024-01-05Z", "2024_01_05", "2024-01-05 09-30", "2024-001-05",
+                "2024-01-05T", "2024--01-05", "昨天"}) {
+            assertEquals(LedgerTime.INVALID, LedgerTime.parseEpochSecond(text), String.valueOf(text));
+        }
+    }
+
+    @Test
+    void parsesSubSequence() {
+        String text = "x,2024-01-05 09:30,y";
+        assertEquals(epochSecond(2024, 1, 5, 9, 30, 0), LedgerTime.parseEpochSecond(text, 2, 18));
+    }
+
+    @Test
+    void epochDayAndFormatting() {
+        long epochSecond = LedgerTime.parseEpochSecond("1969-12-31 23:59:59");
+        assertEquals(-1, epochSecond);
+        assertEquals(-1, LedgerTime.toEpochDay(epochSecond));
+        assertEquals("1969-12-31 23:59:59", LedgerTime.formatDateTime(epochSecond));
+        assertEquals("2024-02-29", LedgerTime.formatDate(LedgerTime.parseEpochDayOrNull("2024/2/29")));
+        assertEquals("2024-01-05 09:03:05", LedgerTime.formatDateTime(LedgerTime.parseEpochSecond("2024-1-5 9:3:5")));
+    }
+
+    @Test
+    void parseEpochDayOrNull() {
+        assertNull(LedgerTime.parseEpochDayOrNull(null));
+        assertNull(LedgerTime.parseEpochDayOrNull(""));
+        assertEquals(19727, LedgerTime.parseEpochDayOrNull("2024-01-05"));
+        assertThrows(IllegalArgumentException.class, () -> LedgerTime.parseEpochDayOrNull("2024-02-30"));
+    }
+
+    @Test
+    void civilDayMatchesJavaTime() {
+        for (int year : new int[]{1, 4, 100, 400, 1600, 1900, 1970, 2000, 2024, 2100, 9999}) {
+            for (int month = 1; month <= 12; month++) {
+                assertEquals(LocalDate.of(year, month, 1).toEpochDay(), LedgerTime.epochDay(year, month, 1),
+                        year + "-" + month);
+            }
+        }
+    }
+
+    private static void assertParsed(String text, int year, int month, int day, int hour, int minute, int second) {
+        assertEquals(epochSecond(year, month, day, hour, minute, second), LedgerTime.parseEpochSecond(text), text);
+    }
+
+    private static long epochSecond(int year, int month, int day, int hour, int minute, int second) {
+        return LocalDateTime.of(year, month, day, hour, minute, second).toEpochSecond(ZoneOffset.UTC);
+    }
+}
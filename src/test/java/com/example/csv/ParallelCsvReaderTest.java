@@ -0,0 +1,117 @@
+package com.example.csv;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 并行解析的结果必须与 {@link CsvRecordReader} 逐条解析完全一致，数据块很小时切分点会落在各种位置上。
+ */
+class ParallelCsvReaderTest {
+
+    private static final String HEADER = "分类,时间,金额,账户,账本,货币,备注";
+
+    private static ExecutorService executor;
+
+    @BeforeAll
+    static void startExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterAll
+    static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void literalQuoteInsideFieldDoesNotShiftCuts() throws IOException {
+        StringBuilder csv = new StringBuilder(HEADER).append('\n');
+        for (int i = 0; i < 400; i++) {
+            String remark = switch (i % 50) {
+                case 3 -> "12\" pizza";
+                case 17 -> "\"多行\n备注, 含逗号\"";
+                case 31 -> "\"他说\"\"好\"\"\"";
+                default -> "备注" + i;
+            };
+            csv.append("餐饮,2024-01-").append(String.format("%02d", i % 28 + 1)).append(" 09:30:00,-")
+                    .append(i).append(".5,现金,默认,CNY,").append(remark).append('\n');
+        }
+        assertSameRows(csv.toString(), 400);
+    }
+
+    @Test
+    void bareCarriageReturnLineEndings() throws IOException {
+        StringBuilder csv = new StringBuilder(HEADER).append('\r');
+        for (int i = 0; i < 200; i++) {
+            csv.append("工资,2024-02-01 10:00,").append(i).append(",银行,默认,CNY,\"第一行\r第二行\"\r");
+        }
+        assertSameRows(csv.toString(), 200);
+    }
+
+    @Test
+    void carriageReturnLineFeedAndBlankLines() throws IOException {
+        StringBuilder csv = new StringBuilder(HEADER).append("\r\n");
+        for (int i = 0; i < 200; i++) {
+            csv.append("购物,2024/3/5 9:30,").append(i).append(",信用卡,默认,CNY,  \"引号前有空白\"\r\n");
+            if (i % 40 == 0) {
+                csv.append("\r\n");
+            }
+        }
+        assertSameRows(csv.toString(), 200);
+    }
+
+    @Test
+    void unclosedQuoteIsReportedLikeSequentialReader() {
+        String csv = HEADER + "\n餐饮,2024-01-05 09:30:00,-12.5,现金,默认,CNY,\"没有闭合\n"
+                + "餐饮,2024-01-05 09:30:00,-12.5,现金,默认,CNY,备注\n".repeat(50);
+        assertThrows(IllegalArgumentException.class, () -> readAll(new CsvRecordReader(input(csv))));
+        assertThrows(IllegalArgumentException.class, () -> readAll(
+                new ParallelCsvReader(input(csv), executor, 64, 4)));
+    }
+
+    @Test
+    void recordEndFollowsTokenizerQuoteRule() {
+        byte[] data = "a,12\" pizza\nb,\"x\ny\"\nc".getBytes(StandardCharsets.UTF_8);
+        assertEquals(12, ParallelCsvReader.recordEnd(data, data.length, true));
+        assertEquals(20, ParallelCsvReader.recordEnd(data, data.length, false));
+
+        // 末尾的 \r 后面可能还有 \n，不能在这里切分
+        byte[] pendingCr = "a,b\rc,d\r".getBytes(StandardCharsets.UTF_8);
+        assertEquals(4, ParallelCsvReader.recordEnd(pendingCr, pendingCr.length, false));
+    }
+
+    private static void assertSameRows(String csv, int expectedRows) throws IOException {
+        List<String> sequential = readAll(new CsvRecordReader(input(csv)));
+        assertEquals(expectedRows, sequential.size());
+        for (int blockSize : new int[]{16, 61, 257, 4096}) {
+            List<String> parallel = readAll(new ParallelCsvReader(input(csv), executor, blockSize, 4));
+            assertEquals(sequential, parallel, "blockSize=" + blockSize);
+        }
+    }
+
+    private static List<String> readAll(CsvRowSource source) throws IOException {
+        List<String> rows = new ArrayList<>();
+        try (source) {
+            CsvData row;
+            while ((row = source.next()) != null) {
+                rows.add(row.getRowHash() + "|" + row.getCategory() + "|" + row.getRemark());
+            }
+        }
+        return rows;
+    }
+
+    private static ByteArrayInputStream input(String csv) {
+        return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+    }
+}
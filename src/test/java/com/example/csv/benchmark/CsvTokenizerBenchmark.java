@@ -0,0 +1,162 @@
+package com.example.csv.benchmark;
+
+import com.example.csv.CsvTokenizer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较 {@link CsvTokenizer} 与原来按行解析的 parseLine 的吞吐量和分配速率。
+ * <p>
+ * 运行方式（在项目根目录）：
+ * <pre>
+ * mvn -q test-compile
+ * mvn -q dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.example.csv.benchmark.CsvTokenizerBenchmark
+ * </pre>
+ * 结果中的 bytes 一列是每秒解析的字节数（除以 10^6 即 MB/s），gc.alloc.rate.norm 是每次解析整个输入分配的字节数。
+ * 输入不含跨行的引号字段，因为原来的实现无法解析这种输入。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvTokenizerBenchmark {
+
+    @Param({"100000"})
+    public int rows;
+
+    private byte[] input;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void generateInput() {
+        Random random = new Random(42);
+        String[] categories = {"餐饮", "交通", "购物", "工资", "娱乐"};
+        StringBuilder csv = new StringBuilder("\uFEFF分类,时间,金额,账户,账本,货币,备注\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append(categories[random.nextInt(categories.length)]).append(',')
+                    .append(String.format("2024-%02d-%02d %02d:%02d:00", 1 + random.nextInt(12),
+                            1 + random.nextInt(28), random.nextInt(24), random.nextInt(60))).append(',')
+                    .append(random.nextInt(100000) - 50000).append('.').append(random.nextInt(100)).append(',')
+                    .append("现金,日常账本,CNY,");
+            if (i % 4 == 0) {
+                csv.append("\"备注, 带逗号 \"\"引号\"\"\"");
+            } else {
+                csv.append("普通备注").append(i);
+            }
+            csv.append('\n');
+        }
+        input = csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void legacyParseLine(Bytes bytes, Blackhole blackhole) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(input), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                blackhole.consume(legacyParseLine(line));
+            }
+        }
+        bytes.bytes += input.length;
+    }
+
+    /**
+     * 只读取字段位置，不创建字符串。
+     */
+    @Benchmark
+    public void tokenizer(Bytes bytes, Blackhole blackhole) throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(
+                new InputStreamReader(new ByteArrayInputStream(input), StandardCharsets.UTF_8));
+        while (tokenizer.nextRecord()) {
+            for (int i = 0; i < tokenizer.fieldCount(); i++) {
+                blackhole.consume(tokenizer.fieldEnd(i) - tokenizer.fieldStart(i));
+            }
+        }
+        bytes.bytes += input.length;
+    }
+
+    /**
+     * 为每个字段创建字符串，与 CsvRecordReader 的实际用法一致。
+     */
+    @Benchmark
+    public void tokenizerWithStrings(Bytes bytes, Blackhole blackhole) throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(
+                new InputStreamReader(new ByteArrayInputStream(input), StandardCharsets.UTF_8));
+        while (tokenizer.nextRecord()) {
+            for (int i = 0; i < tokenizer.fieldCount(); i++) {
+                blackhole.consume(tokenizer.field(i));
+            }
+        }
+        bytes.bytes += input.length;
+    }
+
+    // 替换前 CsvRecordReader.parseLine 的实现，作为基准
+    private static List<String> legacyParseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder currentField = new StringBuilder();
+        boolean inQuotes = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (c == '"') {
+                inQuotes = !inQuotes;
+            } else if (c == ',' && !inQuotes) {
+                fields.add(currentField.toString().trim());
+                currentField = new StringBuilder();
+            } else {
+                currentField.append(c);
+            }
+        }
+
+        fields.add(currentField.toString().trim());
+        return fields;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CsvTokenizerBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
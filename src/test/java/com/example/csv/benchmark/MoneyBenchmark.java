@@ -0,0 +1,126 @@
+package com.example.csv.benchmark;
+
+import com.example.csv.LedgerMoney;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较金额“解析 → 累加 → 格式化”三种实现的吞吐量和分配速率：
+ * 原来的 BigDecimal、按 double 计算再用 String.format 输出，以及 {@link LedgerMoney} 的以分为单位的 long。
+ * <p>
+ * 运行方式（在项目根目录）：
+ * <pre>
+ * mvn -q test-compile
+ * mvn -q dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.example.csv.benchmark.MoneyBenchmark
+ * </pre>
+ * 结果为每秒处理的金额个数，gc.alloc.rate.norm 是每个金额分配的字节数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MoneyBenchmark {
+
+    private static final int AMOUNTS = 10000;
+
+    private String[] amounts;
+
+    @Setup
+    public void generateInput() {
+        Random random = new Random(42);
+        amounts = new String[AMOUNTS];
+        for (int i = 0; i < AMOUNTS; i++) {
+            // 与导入的 CSV 一致：大多是两位小数，少量整数和一位小数
+            long cents = random.nextInt(10000000) - 5000000;
+            String text = BigDecimal.valueOf(cents, 2).toPlainString();
+            if (i % 10 == 0) {
+                text = Long.toString(cents / 100);
+            } else if (i % 10 == 1) {
+                text = text.substring(0, text.length() - 1);
+            }
+            amounts[i] = text;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AMOUNTS)
+    public void bigDecimal(Blackhole blackhole) {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (String amount : amounts) {
+            BigDecimal value = new BigDecimal(amount.trim()).setScale(2, RoundingMode.HALF_UP);
+            sum = sum.add(value);
+            blackhole.consume(value.toPlainString());
+        }
+        blackhole.consume(sum.toPlainString());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AMOUNTS)
+    public void doubleWithFormat(Blackhole blackhole) {
+        double sum = 0;
+        for (String amount : amounts) {
+            double value = Double.parseDouble(amount);
+            sum += value;
+            blackhole.consume(String.format("%.2f", value));
+        }
+        blackhole.consume(String.format("%.2f", sum));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AMOUNTS)
+    public void fixedPoint(Blackhole blackhole) {
+        long sum = 0;
+        for (String amount : amounts) {
+            long cents = LedgerMoney.parseCents(amount);
+            sum += cents;
+            blackhole.consume(LedgerMoney.formatCents(cents));
+        }
+        blackhole.consume(LedgerMoney.formatCents(sum));
+    }
+
+    /**
+     * 复用格式化缓冲区，与流式导出的用法一致，不创建字符串。
+     */
+    @Benchmark
+    @OperationsPerInvocation(AMOUNTS)
+    public void fixedPointIntoBuffer(Blackhole blackhole) {
+        char[] buffer = new char[LedgerMoney.MAX_FORMATTED_LENGTH];
+        long sum = 0;
+        for (String amount : amounts) {
+            long cents = LedgerMoney.parseCents(amount);
+            sum += cents;
+            blackhole.consume(LedgerMoney.formatCents(cents, buffer));
+        }
+        blackhole.consume(LedgerMoney.formatCents(sum, buffer));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(MoneyBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
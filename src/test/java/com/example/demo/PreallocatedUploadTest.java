@@ -0,0 +1,179 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 服务重启后只能依靠 .state 文件恢复进度：每个用例写入部分分片后重新 {@link PreallocatedUpload#load} 再检查。
+ */
+class PreallocatedUploadTest {
+
+    private static final byte[] CONTENT = "0123456789abcdefghij".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void resumesFromStateFileAfterRestart() throws IOException {
+        Path dataPath = tempDir.resolve("file.upload");
+        // 20 字节按 3 字节分片，共 7 片，最后一片 2 字节
+        PreallocatedUpload upload = PreallocatedUpload.open(dataPath, CONTENT.length, 3);
+        assertEquals(List.of("0-6"), ranges(upload.missingRanges()));
+        for (int index : new int[]{0, 2, 3, 6}) {
+            write(upload, index);
+        }
+
+        PreallocatedUpload restarted = PreallocatedUpload.load(dataPath);
+        assertNotNull(restarted);
+        assertEquals(CONTENT.length, restarted.getFileSize());
+        assertEquals(3, restarted.getChunkSize());
+        assertEquals(7, restarted.getTotalChunks());
+        assertEquals(4, restarted.receivedChunks());
+        assertEquals(List.of("1-1", "4-5"), ranges(restarted.missingRanges()));
+        // 已收到的分片不再写入
+        assertNull(write(restarted, 2));
+
+        // 同样的参数 open 得到的是已有的上传，参数不一致时拒绝
+        assertEquals(4, PreallocatedUpload.open(dataPath, CONTENT.length, 3).receivedChunks());
+        assertThrows(IllegalArgumentException.class, () -> PreallocatedUpload.open(dataPath, CONTENT.length, 4));
+
+        for (int index : new int[]{5, 1, 4}) {
+            write(restarted, index);
+        }
+        assertTrue(restarted.missingRanges().isEmpty());
+        // 重启后内存中没有按顺序计算的结果，需要从头读取
+        assertNull(restarted.streamedSha256());
+        assertEquals(sha256(CONTENT), restarted.sha256());
+
+        Path target = tempDir.resolve("file.bin");
+        restarted.commit(target);
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertFalse(Files.exists(dataPath));
+        assertFalse(Files.exists(tempDir.resolve("file.upload.state")));
+        assertNull(PreallocatedUpload.load(dataPath));
+    }
+
+    @Test
+    void concurrentWritersSharingBitmapBytes() throws Exception {
+        Path dataPath = tempDir.resolve("concurrent.upload");
+        byte[] content = new byte[200];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        // 每片 1 字节，同一个位图字节由 8 个分片共享；每隔 5 片留一片不上传
+        PreallocatedUpload upload = PreallocatedUpload.open(dataPath, content.length, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> writes = new ArrayList<>();
+            for (int index = 0; index < content.length; index++) {
+                if (index % 5 == 4) {
+                    continue;
+                }
+                int chunkIndex = index;
+                writes.add(executor.submit(() -> upload.writeChunk(chunkIndex,
+                        new ByteArrayInputStream(content, chunkIndex, 1), 1, null)));
+            }
+            for (Future<String> write : writes) {
+                assertNotNull(write.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        PreallocatedUpload restarted = PreallocatedUpload.load(dataPath);
+        assertEquals(160, restarted.receivedChunks());
+        List<String> expected = new ArrayList<>();
+        for (int index = 4; index < content.length; index += 5) {
+            expected.add(index + "-" + index);
+        }
+        assertEquals(expected, ranges(restarted.missingRanges()));
+    }
+
+    @Test
+    void failedChecksumIsNotMarkedReceived() throws IOException {
+        Path dataPath = tempDir.resolve("crc.upload");
+        PreallocatedUpload upload = PreallocatedUpload.open(dataPath, CONTENT.length, 10);
+        assertThrows(IllegalArgumentException.class, () -> upload.writeChunk(0,
+                new ByteArrayInputStream(CONTENT, 0, 10), 10, "00000000"));
+        assertThrows(IllegalArgumentException.class, () -> upload.writeChunk(1,
+                new ByteArrayInputStream(CONTENT, 10, 5), 5, null));
+
+        assertEquals(List.of("0-1"), ranges(PreallocatedUpload.load(dataPath).missingRanges()));
+    }
+
+    @Test
+    void streamedHashWhenChunksArriveInOrder() throws IOException {
+        PreallocatedUpload upload = PreallocatedUpload.open(tempDir.resolve("ordered.upload"), CONTENT.length, 8);
+        for (int index = 0; index < upload.getTotalChunks(); index++) {
+            write(upload, index);
+        }
+        assertEquals(sha256(CONTENT), upload.streamedSha256());
+        // 再次获取结果不变
+        assertEquals(sha256(CONTENT), upload.sha256());
+    }
+
+    @Test
+    void corruptedStateFileIsRejected() throws IOException {
+        Path dataPath = tempDir.resolve("corrupt.upload");
+        Path statePath = tempDir.resolve("corrupt.upload.state");
+        PreallocatedUpload.open(dataPath, CONTENT.length, 3);
+        byte[] state = Files.readAllBytes(statePath);
+
+        byte[] badMagic = state.clone();
+        badMagic[0] ^= 1;
+        Files.write(statePath, badMagic);
+        assertThrows(IOException.class, () -> PreallocatedUpload.load(dataPath));
+
+        Files.write(statePath, Arrays.copyOf(state, state.length - 1));
+        assertThrows(IOException.class, () -> PreallocatedUpload.load(dataPath));
+
+        Files.write(statePath, Arrays.copyOf(state, 10));
+        assertThrows(IOException.class, () -> PreallocatedUpload.load(dataPath));
+
+        // 分片数与文件大小、分片大小不符
+        byte[] badCount = state.clone();
+        badCount[state.length - 2]++;
+        Files.write(statePath, badCount);
+        assertThrows(IOException.class, () -> PreallocatedUpload.load(dataPath));
+
+        Files.write(statePath, state);
+        assertNotNull(PreallocatedUpload.load(dataPath));
+        Files.delete(dataPath);
+        assertNull(PreallocatedUpload.load(dataPath));
+    }
+
+    private static String write(PreallocatedUpload upload, int index) throws IOException {
+        int offset = (int) (index * upload.getChunkSize());
+        int length = (int) Math.min(upload.getChunkSize(), upload.getFileSize() - offset);
+        return upload.writeChunk(index, new ByteArrayInputStream(CONTENT, offset, length), length, null);
+    }
+
+    private static List<String> ranges(List<int[]> ranges) {
+        return ranges.stream().map(range -> range[0] + "-" + range[1]).toList();
+    }
+
+    private static String sha256(byte[] content) {
+        return HexFormat.of().formatHex(SequentialSha256.newDigest().digest(content));
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SequentialSha256Test {
+
+    private static final byte[][] CHUNKS = {
+            "chunk-0|".getBytes(StandardCharsets.UTF_8),
+            "chunk-1|".getBytes(StandardCharsets.UTF_8),
+            "chunk-2|".getBytes(StandardCharsets.UTF_8),
+    };
+
+    @Test
+    void rewriteDuringStreamingDiscardsStreamedChunk() throws IOException {
+        SequentialSha256 hash = new SequentialSha256();
+        stream(hash, 0, true);
+
+        // 分片 1 写入过程中，客户端重传了分片 0
+        InputStream streaming = hash.begin(1, new ByteArrayInputStream(CHUNKS[1]));
+        streaming.readAllBytes();
+        hash.rewritten(0);
+        hash.end(true);
+
+        assertEquals(0, hash.nextChunk());
+        assertEquals(expected(), hash.finish(remaining(hash.nextChunk())));
+    }
+
+    @Test
+    void failedChunkIsNotHashedTwice() throws IOException {
+        SequentialSha256 hash = new SequentialSha256();
+        stream(hash, 0, true);
+        stream(hash, 1, false);
+        stream(hash, 1, true);
+
+        assertEquals(2, hash.nextChunk());
+        assertEquals(expected(), hash.finish(remaining(hash.nextChunk())));
+    }
+
+    private static void stream(SequentialSha256 hash, int index, boolean success) throws IOException {
+        InputStream input = hash.begin(index, new ByteArrayInputStream(CHUNKS[index]));
+        input.readAllBytes();
+        hash.end(success);
+    }
+
+    private static InputStream remaining(int from) {
+        StringBuilder rest = new StringBuilder();
+        for (int i = from; i < CHUNKS.length; i++) {
+            rest.append(new String(CHUNKS[i], StandardCharsets.UTF_8));
+        }
+        return new ByteArrayInputStream(rest.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String expected() throws IOException {
+        return HexFormat.of().formatHex(SequentialSha256.newDigest().digest(remaining(0).readAllBytes()));
+    }
+}